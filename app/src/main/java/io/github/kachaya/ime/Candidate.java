@@ -19,14 +19,36 @@ package io.github.kachaya.ime;
 import androidx.annotation.NonNull;
 
 public class Candidate {
+    /** 候補の出どころ */
+    public static final int SOURCE_NONE = 0;
+    public static final int SOURCE_LEARNING = 1;    // 学習辞書
+    public static final int SOURCE_SYSTEM = 2;      // システム辞書(完全一致)
+    public static final int SOURCE_COMPLETION = 3;  // システム辞書(前方一致)
+    public static final int SOURCE_INPUT = 4;       // 入力文字列の文字種変換
+    public static final int SOURCE_CONNECTION = 5;  // 接続辞書(予測)
+    public static final int SOURCE_SYMBOL = 6;      // 記号の読み
+
     public String key;
     public String value;
+    public int source;
+    /** 大きいほど優先(同じ検索の中でだけ比較できる) */
+    public int score;
 
     public Candidate(String key, String value) {
         this.key = key;
         this.value = value;
     }
 
+    /**
+     * 内容を入れ替える(CandidateListで使い回すため)
+     */
+    void set(String key, String value, int source, int score) {
+        this.key = key;
+        this.value = value;
+        this.source = source;
+        this.score = score;
+    }
+
     @NonNull
     @Override
     public String toString() {
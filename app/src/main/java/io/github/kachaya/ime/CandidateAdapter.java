@@ -0,0 +1,205 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 候補ビューのアダプタ
+ * <p>
+ * 表示文字列ごとに安定したIDを振り、前回との差分だけを更新する。
+ * 選択の移動は前後の2項目だけを更新する。
+ */
+public class CandidateAdapter extends RecyclerView.Adapter<CandidateAdapter.ViewHolder> {
+    private static final Object PAYLOAD_SELECTION = new Object();
+    private static final int MAX_IDS = 1024;
+
+    private final OnCandidateClickListener mListener;
+    // 表示中の候補と前回の候補(交互に使う)
+    private ArrayList<String> mValues = new ArrayList<>();
+    private ArrayList<String> mOldValues = new ArrayList<>();
+    // 表示文字列→ID
+    private final HashMap<String, Long> mIds = new HashMap<>();
+    private long mNextId;
+    private int mSelectedIndex = -1;
+
+    public interface OnCandidateClickListener {
+        void onCandidateClick(int position);
+    }
+
+    public CandidateAdapter(OnCandidateClickListener listener) {
+        mListener = listener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * 候補を差し替える(選択は解除する)
+     *
+     * @param candidates 候補
+     */
+    public void setCandidates(CandidateList candidates) {
+        setSelectedIndex(-1);
+        ArrayList<String> oldValues = mValues;
+        ArrayList<String> newValues = mOldValues;
+        newValues.clear();
+        for (int i = 0; i < candidates.size(); i++) {
+            newValues.add(candidates.get(i).value);
+        }
+        if (mIds.size() > MAX_IDS) {
+            // 表示中のもの以外のIDを捨てる
+            HashMap<String, Long> ids = new HashMap<>();
+            for (String value : oldValues) {
+                Long id = mIds.get(value);
+                if (id != null) {
+                    ids.put(value, id);
+                }
+            }
+            mIds.clear();
+            mIds.putAll(ids);
+        }
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffCallback(oldValues, newValues), false);
+        mOldValues = oldValues;
+        mValues = newValues;
+        result.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * 選択中の候補を変える
+     *
+     * @param index 候補の位置(-1で選択なし)
+     */
+    public void setSelectedIndex(int index) {
+        int oldIndex = mSelectedIndex;
+        if (index == oldIndex) {
+            return;
+        }
+        mSelectedIndex = index;
+        if (oldIndex >= 0 && oldIndex < mValues.size()) {
+            notifyItemChanged(oldIndex, PAYLOAD_SELECTION);
+        }
+        if (index >= 0 && index < mValues.size()) {
+            notifyItemChanged(index, PAYLOAD_SELECTION);
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String value = mValues.get(position);
+        Long id = mIds.get(value);
+        if (id == null) {
+            id = mNextId++;
+            mIds.put(value, id);
+        }
+        return id;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mValues.size();
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.viewholder_candidate, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                mListener.onCandidateClick(position);
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_SELECTION) {
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+        } else {
+            holder.mTextView.setSelected(position == mSelectedIndex);   // 選択の変更だけ
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        AppCompatTextView textView = holder.mTextView;
+        // 文字のレイアウトはバックグラウンドで計算し、測定時に受け取る
+        textView.setTextFuture(PrecomputedTextCompat.getTextFuture(mValues.get(position),
+                TextViewCompat.getTextMetricsParams(textView), null));
+        textView.setSelected(position == mSelectedIndex);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        private final AppCompatTextView mTextView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            mTextView = itemView.findViewById(R.id.text_view);
+        }
+    }
+
+    private static class DiffCallback extends DiffUtil.Callback {
+        private final List<String> mOld;
+        private final List<String> mNew;
+
+        DiffCallback(List<String> oldList, List<String> newList) {
+            mOld = oldList;
+            mNew = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.get(oldItemPosition).equals(mNew.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return true;    // 表示するのは表示文字列だけ
+        }
+    }
+}
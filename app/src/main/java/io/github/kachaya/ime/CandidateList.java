@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import java.util.Arrays;
+
+/**
+ * 候補の一覧
+ * <p>
+ * Candidateは使い回すので、clear()の後も参照を持ち続けたいものはコピーすること。
+ * 表示文字列(value)が同じ候補は先に追加したものだけを残す。
+ */
+public class CandidateList {
+    private Candidate[] mPool = new Candidate[64];
+    private int mSize;
+    // 表示文字列のハッシュ表(オープンアドレス法、候補の番号+1を入れる、0は空き)
+    private int[] mSlots = new int[128];
+
+    /**
+     * 候補を全て消す
+     */
+    public void clear() {
+        mSize = 0;
+        Arrays.fill(mSlots, 0);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public Candidate get(int index) {
+        return mPool[index];
+    }
+
+    /**
+     * 候補を追加する
+     *
+     * @param key    キー
+     * @param value  表示文字列
+     * @param source 出どころ
+     * @param score  優先度
+     * @return 追加したらtrue、同じ表示文字列の候補が既にあればfalse
+     */
+    public boolean add(String key, String value, int source, int score) {
+        int mask = mSlots.length - 1;
+        int i = hash(value) & mask;
+        while (mSlots[i] != 0) {
+            if (mPool[mSlots[i] - 1].value.equals(value)) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        if (mSize == mPool.length) {
+            mPool = Arrays.copyOf(mPool, mSize * 2);
+        }
+        Candidate candidate = mPool[mSize];
+        if (candidate == null) {
+            candidate = new Candidate(key, value);
+            mPool[mSize] = candidate;
+        }
+        candidate.set(key, value, source, score);
+        mSize++;
+        mSlots[i] = mSize;
+        if (mSize * 2 > mSlots.length) {
+            rehash(mSlots.length * 2);
+        }
+        return true;
+    }
+
+    private static int hash(String value) {
+        int h = value.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash(int capacity) {
+        mSlots = new int[capacity];
+        int mask = capacity - 1;
+        for (int n = 0; n < mSize; n++) {
+            int i = hash(mPool[n].value) & mask;
+            while (mSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            mSlots[i] = n + 1;
+        }
+    }
+}
@@ -24,11 +24,11 @@ public class ConnectionDictionaryTool extends DictionaryTool {
         return mDictionary.getConnectionDictionaryName() + ".txt";
     }
 
-    public void importDictionary(ArrayList<String> entries) {
+    public void importEntries(ArrayList<String> entries) {
         mDictionary.importConnectionDictionary(entries);
     }
 
-    public ArrayList<String> exportDictionary() {
+    public ArrayList<String> exportEntries() {
         return mDictionary.exportConnectionDictionary();
     }
 }
@@ -18,9 +18,6 @@ package io.github.kachaya.ime;
 
 import androidx.annotation.NonNull;
 
-import java.util.HashMap;
-import java.util.regex.Pattern;
-
 public class Converter {
 
     private static final String[][] romajiTable = {
@@ -139,120 +136,86 @@ public class Converter {
             {"]", "」"},
     };
 
-    private static final HashMap<Character, String> halfKatakanaMap = new HashMap<Character, String>() {
-        {
-            put('あ', "ｱ");
-            put('い', "ｲ");
-            put('う', "ｳ");
-            put('え', "ｴ");
-            put('お', "ｵ");
-            put('か', "ｶ");
-            put('き', "ｷ");
-            put('く', "ｸ");
-            put('け', "ｹ");
-            put('こ', "ｺ");
-            put('さ', "ｻ");
-            put('し', "ｼ");
-            put('す', "ｽ");
-            put('せ', "ｾ");
-            put('そ', "ｿ");
-            put('た', "ﾀ");
-            put('ち', "ﾁ");
-            put('つ', "ﾂ");
-            put('て', "ﾃ");
-            put('と', "ﾄ");
-            put('な', "ﾅ");
-            put('に', "ﾆ");
-            put('ぬ', "ﾇ");
-            put('ね', "ﾈ");
-            put('の', "ﾉ");
-            put('は', "ﾊ");
-            put('ひ', "ﾋ");
-            put('ふ', "ﾌ");
-            put('へ', "ﾍ");
-            put('ほ', "ﾎ");
-            put('ま', "ﾏ");
-            put('み', "ﾐ");
-            put('む', "ﾑ");
-            put('め', "ﾒ");
-            put('も', "ﾓ");
-            put('や', "ﾔ");
-            put('ゆ', "ﾕ");
-            put('よ', "ﾖ");
-            put('ら', "ﾗ");
-            put('り', "ﾘ");
-            put('る', "ﾙ");
-            put('れ', "ﾚ");
-            put('ろ', "ﾛ");
-            put('わ', "ﾜ");
-            put('を', "ｦ");
-            put('ん', "ﾝ");
-
-            put('が', "ｶﾞ");
-            put('ぎ', "ｷﾞ");
-            put('ぐ', "ｸﾞ");
-            put('げ', "ｹﾞ");
-            put('ご', "ｺﾞ");
-            put('ざ', "ｻﾞ");
-            put('じ', "ｼﾞ");
-            put('ず', "ｽﾞ");
-            put('ぜ', "ｾﾞ");
-            put('ぞ', "ｿﾞ");
-            put('だ', "ﾀﾞ");
-            put('ぢ', "ﾁﾞ");
-            put('づ', "ﾂﾞ");
-            put('で', "ﾃﾞ");
-            put('ど', "ﾄﾞ");
-            put('ば', "ﾊﾞ");
-            put('び', "ﾋﾞ");
-            put('ぶ', "ﾌﾞ");
-            put('べ', "ﾍﾞ");
-            put('ぼ', "ﾎﾞ");
-            put('ぱ', "ﾊﾟ");
-            put('ぴ', "ﾋﾟ");
-            put('ぷ', "ﾌﾟ");
-            put('ぺ', "ﾍﾟ");
-            put('ぽ', "ﾎﾟ");
-
-            put('ゔ', "ｳﾞ");
-
-            put('ぁ', "ｧ");
-            put('ぃ', "ｨ");
-            put('ぅ', "ｩ");
-            put('ぇ', "ｪ");
-            put('ぉ', "ｫ");
-            put('ゃ', "ｬ");
-            put('ゅ', "ｭ");
-            put('ょ', "ｮ");
-            put('っ', "ｯ");
-            put('ー', "ｰ");
-            put('、', "､");
-            put('。', "｡");
-            put('「', "｢");
-            put('」', "｣");
-            put('゛', "ﾞ");
-            put('゜', "ﾟ");
-            put('・', "･");
-        }
+    // 半角カタカナ変換表(先頭の文字を残りの文字に変換する)
+    private static final String[] halfKatakanaTable = {
+            "あｱ", "いｲ", "うｳ", "えｴ", "おｵ",
+            "かｶ", "きｷ", "くｸ", "けｹ", "こｺ",
+            "さｻ", "しｼ", "すｽ", "せｾ", "そｿ",
+            "たﾀ", "ちﾁ", "つﾂ", "てﾃ", "とﾄ",
+            "なﾅ", "にﾆ", "ぬﾇ", "ねﾈ", "のﾉ",
+            "はﾊ", "ひﾋ", "ふﾌ", "へﾍ", "ほﾎ",
+            "まﾏ", "みﾐ", "むﾑ", "めﾒ", "もﾓ",
+            "やﾔ", "ゆﾕ", "よﾖ", "らﾗ", "りﾘ",
+            "るﾙ", "れﾚ", "ろﾛ", "わﾜ", "をｦ",
+            "んﾝ",
+
+            "がｶﾞ", "ぎｷﾞ", "ぐｸﾞ", "げｹﾞ", "ごｺﾞ",
+            "ざｻﾞ", "じｼﾞ", "ずｽﾞ", "ぜｾﾞ", "ぞｿﾞ",
+            "だﾀﾞ", "ぢﾁﾞ", "づﾂﾞ", "でﾃﾞ", "どﾄﾞ",
+            "ばﾊﾞ", "びﾋﾞ", "ぶﾌﾞ", "べﾍﾞ", "ぼﾎﾞ",
+            "ぱﾊﾟ", "ぴﾋﾟ", "ぷﾌﾟ", "ぺﾍﾟ", "ぽﾎﾟ",
+            "ゔｳﾞ",
+
+            "ぁｧ", "ぃｨ", "ぅｩ", "ぇｪ", "ぉｫ",
+            "ゃｬ", "ゅｭ", "ょｮ", "っｯ", "ーｰ",
+            "、､", "。｡", "「｢", "」｣", "゛ﾞ",
+            "゜ﾟ", "・･",
     };
 
+    // 変換表を引く範囲(U+3000〜U+30FF)
+    private static final char TABLE_BASE = '\u3000';
+    private static final int TABLE_SIZE = 0x100;
+    // 半角カタカナの本体と濁点・半濁点(無ければ0)
+    private static final char[] halfKatakanaBase = new char[TABLE_SIZE];
+    private static final char[] halfKatakanaMark = new char[TABLE_SIZE];
+
+    static {
+        for (String s : halfKatakanaTable) {
+            int index = s.charAt(0) - TABLE_BASE;
+            halfKatakanaBase[index] = s.charAt(1);
+            if (s.length() > 2) {
+                halfKatakanaMark[index] = s.charAt(2);
+            }
+        }
+    }
+
+    private static final RomajiTable compiledRomajiTable = RomajiTable.compile(romajiTable);
+
+    // 標準のローマ字変換表の規則
+    public static String[][] getRomajiRules() {
+        return romajiTable.clone();
+    }
+
+    // コンパイル済みのローマ字変換表
+    public static RomajiTable getRomajiTable() {
+        return compiledRomajiTable;
+    }
+
     // ローマ字をひらがなへ変換
     public static String romajiToHiragana(@NonNull CharSequence cs) {
-        String s = cs.toString().toLowerCase();
-        for (String[] pair : romajiTable) {
-            s = s.replaceAll(Pattern.quote(pair[0]), pair[1]);  // "."のためにquote
-        }
-        return s;
+        return compiledRomajiTable.convert(cs);
     }
 
     // 全角英数へ変換
     @NonNull
     public static String toWideLatin(@NonNull CharSequence cs) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < cs.length(); i++) {
-            sb.append(toWideLatin(cs.charAt(i)));
+        char[] buf = toCharArray(cs, cs.length());
+        return new String(buf, 0, toWideLatin(buf, cs.length(), buf));
+    }
+
+    /**
+     * 全角英数へ変換
+     *
+     * @param src    変換元
+     * @param length 変換元の長さ
+     * @param dst    変換先(srcと同じでもよい、長さはlength以上)
+     * @return 変換先の長さ
+     */
+    public static int toWideLatin(char[] src, int length, char[] dst) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = toWideLatin(src[i]);
         }
-        return sb.toString();
+        return length;
     }
 
     // 全角英数へ変換
@@ -271,11 +234,23 @@ public class Converter {
 
     // 全角カタカナへ変換
     public static String toWideKatakana(CharSequence cs) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < cs.length(); i++) {
-            sb.append(toWideKatakana(cs.charAt(i)));
+        char[] buf = toCharArray(cs, cs.length());
+        return new String(buf, 0, toWideKatakana(buf, cs.length(), buf));
+    }
+
+    /**
+     * 全角カタカナへ変換
+     *
+     * @param src    変換元
+     * @param length 変換元の長さ
+     * @param dst    変換先(srcと同じでもよい、長さはlength以上)
+     * @return 変換先の長さ
+     */
+    public static int toWideKatakana(char[] src, int length, char[] dst) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = toWideKatakana(src[i]);
         }
-        return sb.toString();
+        return length;
     }
 
     // 全角カタカナへ変換
@@ -286,20 +261,90 @@ public class Converter {
         return ch;
     }
 
+    // ひらがなへ変換
+    public static String toHiragana(CharSequence cs) {
+        char[] buf = toCharArray(cs, cs.length());
+        return new String(buf, 0, toHiragana(buf, cs.length(), buf));
+    }
+
+    /**
+     * ひらがなへ変換(ひらがなの無いヷ〜ヺはそのまま)
+     *
+     * @param src    変換元
+     * @param length 変換元の長さ
+     * @param dst    変換先(srcと同じでもよい、長さはlength以上)
+     * @return 変換先の長さ
+     */
+    public static int toHiragana(char[] src, int length, char[] dst) {
+        for (int i = 0; i < length; i++) {
+            dst[i] = toHiragana(src[i]);
+        }
+        return length;
+    }
+
+    // ひらがなへ変換
+    public static char toHiragana(char ch) {
+        if (ch >= 'ァ' && ch <= 'ヶ') {
+            return (char) (ch - 'ァ' + 'ぁ');
+        }
+        return ch;
+    }
+
+    /**
+     * 辞書を引くための読みにする(カタカナをひらがなにそろえる)
+     *
+     * @param buf    ローマ字ひらがな変換後の読み(その場で書き換える)
+     * @param length 長さ
+     * @return ASCII文字が残っていなければtrue(ひらがなになったので辞書を引ける)
+     */
+    public static boolean toSearchKey(char[] buf, int length) {
+        toHiragana(buf, length, buf);
+        for (int i = 0; i < length; i++) {
+            if (buf[i] < 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // 半角カタカナへ変換
     public static String toHalfKatakana(CharSequence cs) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < cs.length(); i++) {
-            char key = cs.charAt(i);
-            String val = halfKatakanaMap.get(key);
-            if (val != null) {
-                sb.append(val);
+        int length = cs.length();
+        char[] src = toCharArray(cs, length);
+        char[] dst = new char[length * 2];
+        return new String(dst, 0, toHalfKatakana(src, length, dst));
+    }
+
+    /**
+     * 半角カタカナへ変換
+     *
+     * @param src    変換元
+     * @param length 変換元の長さ
+     * @param dst    変換先(srcとは別、長さはlength*2以上)
+     * @return 変換先の長さ
+     */
+    public static int toHalfKatakana(char[] src, int length, char[] dst) {
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = src[i];
+            int index = ch - TABLE_BASE;
+            if (index >= 0 && index < TABLE_SIZE && halfKatakanaBase[index] != 0) {
+                dst[n++] = halfKatakanaBase[index];
+                if (halfKatakanaMark[index] != 0) {
+                    dst[n++] = halfKatakanaMark[index];
+                }
             } else {
-                sb.append(key);
+                dst[n++] = ch;
             }
         }
-        return sb.toString();
+        return n;
     }
 
-
+    private static char[] toCharArray(CharSequence cs, int length) {
+        char[] buf = new char[length];
+        for (int i = 0; i < length; i++) {
+            buf[i] = cs.charAt(i);
+        }
+        return buf;
+    }
 }
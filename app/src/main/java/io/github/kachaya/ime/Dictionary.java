@@ -18,45 +18,88 @@ package io.github.kachaya.ime;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedHashSet;
-import java.util.Properties;
-import java.util.Set;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import jdbm.RecordManager;
-import jdbm.RecordManagerFactory;
 import jdbm.btree.BTree;
 import jdbm.helper.StringComparator;
 import jdbm.helper.Tuple;
 import jdbm.helper.TupleBrowser;
+import jdbm.recman.BaseRecordManager;
+import jdbm.recman.CacheRecordManager;
 
 public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeListener {
 
+    private static final String TAG = "Dictionary";
     private static final Pattern punctuationPattern = Pattern.compile("[\\p{Punct}\\p{InCJK_SYMBOLS_AND_PUNCTUATION}]");
     private static final String BTREE_NAME = "btree_dic";
     private static final String SYSTEM_DIC_NAME = "system_dic";
     private static final String LEARNING_DIC_NAME = "learning_dic";
     private static final String CONNECTION_DIC_NAME = "connection_dic";
+    private static final String WARMUP_LIST_NAME = "warmup.txt";
+    private static final int WARMUP_LEARNING_KEYS = 100;    // 学習辞書から先読みするキーの数
+    private static final long WARMUP_TIME_BUDGET = 500;     // 先読みの時間の上限(ms)
+    private static final int WARMUP_MEMORY_BUDGET = 256 * 1024; // 先読みのメモリの上限(byte、概算)
+    private static final int WARMUP_BROWSE_BATCH = 64;      // 学習辞書を走査する時に一度にロックして読むエントリ数
+    private final ExecutorService mExecutor;
+    private final Future<?> mLearningDicFuture;
+    private final Future<?> mSystemDicFuture;
+    private final Future<?> mConnectionDicFuture;
+    private final Future<?> mReadyFuture;
+    private final Future<?> mWarmUpFuture;
+    /** 先読みしたシステム辞書のエントリ(キー→値、完全一致の検索でだけ使う) */
+    private final Map<String, String> mHotSystemDic = new ConcurrentHashMap<>();
+    private final DictionaryCache mSystemDicCache;
+    private final DictionaryCache mLearningDicCache;
+    private final DictionaryCache mConnectionDicCache;
+    /** 記号の読みの索引(最初の検索時に読み込む) */
+    private final SymbolIndex mSymbolIndex;
     private BTree mBTreeSystemDic;
     private RecordManager mRecmanLearningDic;
     private BTree mBTreeLearningDic;
+    /** 学習辞書の書き込みと走査の排他(走査中に書き込むとTupleBrowserが壊れる) */
+    private final Object mLearningDicLock = new Object();
     private RecordManager mRecmanConnectionDic;
     private BTree mBTreeConnectionDic;
+    // 候補の優先度の基準値(出どころごと)
+    private static final int SCORE_LEARNING = 40000;
+    private static final int SCORE_SYSTEM = 30000;
+    private static final int SCORE_SYMBOL = 25000;
+    private static final int SCORE_COMPLETION = 20000;
+    private static final int SCORE_SYMBOL_COMPLETION = 15000;
+    private static final int SYMBOL_COMPLETION_EXTRA = 3;   // 記号の読みを補完する文字数
+    private static final int SYMBOL_COMPLETION_LIMIT = 10;  // 前方一致で追加する記号の数
+    private static final int SCORE_INPUT = 10000;
+    private static final int SCORE_CONNECTION = 40000;
     private int mSearchCounter;
+    // 文字種変換用のバッファ(searchでだけ使う)
+    private char[] mConvertBuffer = new char[32];
+    private char[] mHalfKatakanaBuffer = new char[64];
     // 設定項目
     private boolean mConvertHalfkana;
     private int mSearchLimit = 50;
@@ -66,13 +109,60 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
         sharedPreferences.registerOnSharedPreferenceChangeListener(this);
         mConvertHalfkana = sharedPreferences.getBoolean("convert_halfkana", false);
 
-        copyFromResRaw(context);
+        // 辞書ごとのキャッシュ設定(変更は次回のオープンから有効)
+        mSystemDicCache = createCache(sharedPreferences, SYSTEM_DIC_NAME);
+        mLearningDicCache = createCache(sharedPreferences, LEARNING_DIC_NAME);
+        mConnectionDicCache = createCache(sharedPreferences, CONNECTION_DIC_NAME);
+        mSymbolIndex = new SymbolIndex(context);
 
-        // 接続辞書
+        // 辞書のオープンはバックグラウンドで行い、検索時には必要な辞書だけを待つ
+        // 検索のたびに使う学習辞書を最初に、予測でしか使わない接続辞書を最後に開く
+        long startTime = SystemClock.uptimeMillis();
+        String filesDir = context.getFilesDir().getAbsolutePath();
+        mExecutor = Executors.newSingleThreadExecutor();
+        mLearningDicFuture = mExecutor.submit(() -> openLearningDic(filesDir));
+        mSystemDicFuture = mExecutor.submit(() -> {
+            copyFromResRaw(context);
+            openSystemDic(filesDir);
+        });
+        mConnectionDicFuture = mExecutor.submit(() -> openConnectionDic(filesDir));
+        mReadyFuture = mExecutor.submit(() ->
+                Log.d(TAG, "dictionaries opened in " + (SystemClock.uptimeMillis() - startTime) + " ms"));
+        mWarmUpFuture = mExecutor.submit(() -> warmUp(context));
+    }
+
+    /**
+     * 完了を待つ
+     * <p>
+     * オープンに失敗した辞書はnullのままなので、使う側はnullなら飛ばす。
+     *
+     * @param future 待つ対象
+     */
+    private static void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "failed to open dictionary", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DictionaryCache createCache(SharedPreferences sharedPreferences, String name) {
+        int size = Integer.parseInt(sharedPreferences.getString(name + "_cache_size", "1000"));
+        boolean soft = sharedPreferences.getBoolean(name + "_cache_soft", false);
+        return new DictionaryCache(name, size, soft);
+    }
+
+    private static RecordManager createRecordManager(String name, DictionaryCache cache) throws IOException {
+        return new CacheRecordManager(new BaseRecordManager(name), cache);
+    }
+
+    // 接続辞書
+    private void openConnectionDic(String filesDir) {
         try {
-            Properties props = new Properties();
-            String name = context.getFilesDir().getAbsolutePath() + "/" + CONNECTION_DIC_NAME;
-            mRecmanConnectionDic = RecordManagerFactory.createRecordManager(name, props);
+            String name = filesDir + "/" + CONNECTION_DIC_NAME;
+            mRecmanConnectionDic = createRecordManager(name, mConnectionDicCache);
             long recid = mRecmanConnectionDic.getNamedObject(BTREE_NAME);
             if (recid == 0) {
                 mBTreeConnectionDic = BTree.createInstance(mRecmanConnectionDic, new StringComparator());
@@ -85,11 +175,13 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
             mRecmanConnectionDic = null;
             mBTreeConnectionDic = null;
         }
-        // 学習辞書
+    }
+
+    // 学習辞書
+    private void openLearningDic(String filesDir) {
         try {
-            Properties props = new Properties();
-            String name = context.getFilesDir().getAbsolutePath() + "/" + LEARNING_DIC_NAME;
-            mRecmanLearningDic = RecordManagerFactory.createRecordManager(name, props);
+            String name = filesDir + "/" + LEARNING_DIC_NAME;
+            mRecmanLearningDic = createRecordManager(name, mLearningDicCache);
             long recid = mRecmanLearningDic.getNamedObject(BTREE_NAME);
             if (recid == 0) {
                 mBTreeLearningDic = BTree.createInstance(mRecmanLearningDic, new StringComparator());
@@ -102,11 +194,13 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
             mRecmanLearningDic = null;
             mBTreeLearningDic = null;
         }
-        // システム辞書
+    }
+
+    // システム辞書
+    private void openSystemDic(String filesDir) {
         try {
-            Properties props = new Properties();
-            String name = context.getFilesDir().getAbsolutePath() + "/" + SYSTEM_DIC_NAME;
-            RecordManager recman = RecordManagerFactory.createRecordManager(name, props);
+            String name = filesDir + "/" + SYSTEM_DIC_NAME;
+            RecordManager recman = createRecordManager(name, mSystemDicCache);
             long recid = recman.getNamedObject(BTREE_NAME);
             mBTreeSystemDic = BTree.load(recman, recid);
         } catch (IOException e) {
@@ -114,6 +208,175 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
         }
     }
 
+    private static boolean isHiragana(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if ((ch < 'ぁ' || ch > 'ゖ') && ch != 'ー') {
+                return false;
+            }
+        }
+        return s.length() > 0;
+    }
+
+    /**
+     * よく使う読みのシステム辞書エントリをメモリに読み込んでおく
+     * <p>
+     * 学習辞書の登録語の多いキー、同梱の頻度リストの順に、時間とメモリの上限まで読み込む。
+     * 中断されたら(closeされたら)そこで終了する。
+     * メモリから引くのは完全一致の検索だけで、前方一致の補完はこれまでどおりB-treeを走査する。
+     *
+     * @param context コンテキスト
+     */
+    private void warmUp(Context context) {
+        if (mBTreeSystemDic == null) {
+            return;
+        }
+        long startTime = SystemClock.uptimeMillis();
+        long deadline = startTime + WARMUP_TIME_BUDGET;
+        ArrayList<String> keys = getLearningTopKeys(deadline);
+        keys.addAll(readWarmUpList(context));
+        int bytes = 0;
+        for (String key : keys) {
+            if (Thread.currentThread().isInterrupted() || SystemClock.uptimeMillis() > deadline) {
+                break;
+            }
+            if (mHotSystemDic.containsKey(key)) {
+                continue;
+            }
+            try {
+                String value = (String) mBTreeSystemDic.find(key);
+                if (value == null) {
+                    continue;
+                }
+                int size = (key.length() + value.length()) * 2;
+                if (bytes + size > WARMUP_MEMORY_BUDGET) {
+                    break;
+                }
+                mHotSystemDic.put(key, value);
+                bytes += size;
+            } catch (IOException ignored) {
+            }
+        }
+        Log.d(TAG, "warm-up: " + mHotSystemDic.size() + " entries, " + bytes + " bytes in "
+                + (SystemClock.uptimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * 学習辞書のひらがなのキーを登録語の多い順に返す
+     * <p>
+     * 走査は書き込みと排他するが、UIスレッドからの登録を待たせないように
+     * WARMUP_BROWSE_BATCH件ごとにロックを外し、最後に見たキーから走査し直す。
+     * 時間切れか中断されたらそこまでに見たキーで終える。
+     *
+     * @param deadline 打ち切る時刻(SystemClock.uptimeMillis()の値)
+     * @return キー
+     */
+    private ArrayList<String> getLearningTopKeys(long deadline) {
+        ArrayList<String> keys = new ArrayList<>();
+        if (mBTreeLearningDic == null) {
+            return keys;
+        }
+        HashMap<String, Integer> wordCounts = new HashMap<>();
+        Tuple tuple = new Tuple();
+        String lastKey = null;
+        boolean done = false;
+        while (!done) {
+            if (Thread.currentThread().isInterrupted() || SystemClock.uptimeMillis() > deadline) {
+                break;
+            }
+            synchronized (mLearningDicLock) {
+                try {
+                    TupleBrowser browser = (lastKey == null)
+                            ? mBTreeLearningDic.browse() : mBTreeLearningDic.browse(lastKey);
+                    int count = 0;
+                    done = true;
+                    while (browser.getNext(tuple)) {
+                        String key = (String) tuple.getKey();
+                        if (key.equals(lastKey)) {
+                            continue;   // 前回の最後のキー
+                        }
+                        lastKey = key;
+                        if (isHiragana(key)) {
+                            keys.add(key);
+                            wordCounts.put(key, countWords((String) tuple.getValue()));
+                        }
+                        if (++count == WARMUP_BROWSE_BATCH) {
+                            done = false;
+                            break;
+                        }
+                    }
+                } catch (IOException ignored) {
+                    done = true;
+                }
+            }
+        }
+        Collections.sort(keys, (a, b) -> wordCounts.get(b) - wordCounts.get(a));
+        if (keys.size() > WARMUP_LEARNING_KEYS) {
+            keys.subList(WARMUP_LEARNING_KEYS, keys.size()).clear();
+        }
+        return keys;
+    }
+
+    /**
+     * タブ区切りの値に含まれる語の数を返す
+     */
+    private static int countWords(String value) {
+        int count = 1;
+        for (int i = value.indexOf('\t'); i >= 0; i = value.indexOf('\t', i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 同梱の頻度リスト(よく使う読みを頻度順に並べたもの)を読み込む
+     *
+     * @param context コンテキスト
+     * @return 読み
+     */
+    private ArrayList<String> readWarmUpList(Context context) {
+        ArrayList<String> list = new ArrayList<>();
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(context.getAssets().open(WARMUP_LIST_NAME)));
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("#") || line.isEmpty()) {
+                    continue;
+                }
+                list.add(line);
+            }
+            br.close();
+        } catch (IOException ignored) {
+        }
+        return list;
+    }
+
+    /**
+     * すべての辞書のオープン完了を表すFutureを返す
+     *
+     * @return Future
+     */
+    public Future<?> getReadyFuture() {
+        return mReadyFuture;
+    }
+
+    /**
+     * キャッシュの計測値を返す
+     *
+     * @return 辞書ごとのヒット・ミス・追い出し回数
+     */
+    public String getCacheStatistics() {
+        return mSystemDicCache + ", " + mLearningDicCache + ", " + mConnectionDicCache;
+    }
+
+    /**
+     * バックグラウンド処理を終了する
+     */
+    public void close() {
+        mWarmUpFuture.cancel(true);
+        mExecutor.shutdown();
+    }
+
     public String getLearningDictionaryName() {
         return LEARNING_DIC_NAME;
     }
@@ -165,52 +428,55 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
     }
 
     /**
-     * 学習辞書内の完全一致する候補を返す
+     * 学習辞書内の完全一致する候補を追加する
      *
-     * @param key キー文字列
-     * @return 候補
+     * @param key        キー文字列
+     * @param candidates 追加先
      */
-    private String[] findLearningDic(String key) {
-        ArrayList<String> list = new ArrayList<>();
+    private void findLearningDic(String key, CandidateList candidates) {
+        if (mBTreeLearningDic == null) {
+            return;
+        }
         try {
             String value = (String) mBTreeLearningDic.find(key);
             if (value != null) {
-                String[] words = value.split("\t");
-                for (String word : words) {
-                    list.add(key + "\t" + word);
-                }
+                addWords(key, value, false, Candidate.SOURCE_LEARNING, SCORE_LEARNING, candidates);
             }
         } catch (IOException ignored) {
         }
-        return list.toArray(new String[0]);
     }
 
     /**
-     * システム辞書内の完全一致する候補を返す
+     * システム辞書内の完全一致する候補を追加する(先読みしたものはメモリから引く)
      *
-     * @param key キー
-     * @return 候補
+     * @param key        キー
+     * @param candidates 追加先
      */
-    private String[] findSystemDic(String key) {
-        ArrayList<String> list = new ArrayList<>();
+    private void findSystemDic(String key, CandidateList candidates) {
         try {
-            String value = (String) mBTreeSystemDic.find(key);
+            String value = mHotSystemDic.get(key);
+            if (value == null && mBTreeSystemDic != null) {
+                value = (String) mBTreeSystemDic.find(key);
+            }
             if (value != null) {
-                String[] words = value.split("\t");
-                for (String word : words) {
-                    String[] ss = word.split(",", 3);
-                    list.add(key + "\t" + ss[2]);   // surface
-                }
+                addWords(key, value, true, Candidate.SOURCE_SYSTEM, SCORE_SYSTEM, candidates);
             }
         } catch (IOException ignored) {
         }
-        return list.toArray(new String[0]);
     }
 
-    private String[] browseSystemDic(String key) {
+    /**
+     * システム辞書内の前方一致する候補を追加する(先読みの対象外なので毎回B-treeを走査する)
+     *
+     * @param key        キー
+     * @param candidates 追加先
+     */
+    private void browseSystemDic(String key, CandidateList candidates) {
+        if (mBTreeSystemDic == null) {
+            return;
+        }
         Tuple tuple = new Tuple();
         TupleBrowser browser;
-        ArrayList<String> list = new ArrayList<>();
         try {
             browser = mBTreeSystemDic.browse(key);
             while (browser.getNext(tuple)) {
@@ -223,12 +489,8 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
                 }
                 String value = (String) tuple.getValue();
                 if (value != null) {
-                    String[] words = value.split("\t");
-                    for (String word : words) {
-                        String[] ss = word.split(",", 3);
-                        list.add(key + "\t" + ss[2]);   // surface
-                        mSearchCounter++;
-                    }
+                    mSearchCounter += addWords(key, value, true, Candidate.SOURCE_COMPLETION,
+                            SCORE_COMPLETION - mSearchCounter, candidates);
                 }
                 if (mSearchCounter > mSearchLimit) {
                     break;
@@ -236,83 +498,175 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
             }
         } catch (IOException ignored) {
         }
-        return list.toArray(new String[0]);
     }
 
-    public Candidate[] search(String key) {
-        mSearchCounter = 0;
-        Set<String> set = new LinkedHashSet<>();
-        String hiragana = Converter.romajiToHiragana(key);
-        boolean hiraganaOnly = true;
-        for (char ch : hiragana.toCharArray()) {
-            if (ch < 0x80) {
-                hiraganaOnly = false;    // ローマ字ひらがな変換後にASCII文字が残っている
-                break;
+    /**
+     * タブ区切りの辞書の値から候補を追加する
+     *
+     * @param key        キー
+     * @param value      辞書の値
+     * @param system     システム辞書の形式(「?,?,表層形」)ならtrue
+     * @param source     出どころ
+     * @param score      先頭の語の優先度(以降は1ずつ下げる)
+     * @param candidates 追加先
+     * @return 値に含まれていた語の数
+     */
+    private static int addWords(String key, String value, boolean system, int source, int score,
+                                CandidateList candidates) {
+        int count = 0;
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf('\t', start);
+            if (end < 0) {
+                end = value.length();
             }
+            int wordStart = start;
+            if (system) {
+                // 「?,?,表層形」の表層形
+                int comma = value.indexOf(',', start);
+                comma = (comma < 0 || comma > end) ? -1 : value.indexOf(',', comma + 1);
+                if (comma >= 0 && comma < end) {
+                    wordStart = comma + 1;
+                }
+            }
+            if (wordStart < end) {
+                candidates.add(key, value.substring(wordStart, end), source, score - count);
+            }
+            count++;
+            start = end + 1;
+        }
+        return count;
+    }
+
+    /**
+     * 候補を検索する
+     *
+     * @param key        入力文字列
+     * @param candidates 候補の格納先
+     */
+    public void search(String key, CandidateList candidates) {
+        search(key, Converter.romajiToHiragana(key), candidates);
+    }
+
+    private char[] getConvertBuffer(int size) {
+        if (mConvertBuffer.length < size) {
+            mConvertBuffer = new char[size];
+        }
+        return mConvertBuffer;
+    }
+
+    /**
+     * 候補を検索する
+     *
+     * @param key        入力文字列
+     * @param hiragana   入力文字列をひらがなに変換したもの
+     * @param candidates 候補の格納先
+     */
+    public void search(String key, String hiragana, CandidateList candidates) {
+        mSearchCounter = 0;
+        candidates.clear();
+        // カタカナはひらがなにそろえて検索する
+        int length = hiragana.length();
+        char[] buf = getConvertBuffer(length);
+        hiragana.getChars(0, length, buf, 0);
+        boolean hiraganaOnly = Converter.toSearchKey(buf, length);
+        if (hiraganaOnly) {
+            hiragana = new String(buf, 0, length);
+        }
+        // システム辞書はひらがなになった時だけ使うので、その時だけオープンを待つ
+        await(mLearningDicFuture);
+        if (hiraganaOnly) {
+            await(mSystemDicFuture);
         }
         // 一致検索
         if (hiraganaOnly) {
-            set.addAll(Arrays.asList(findLearningDic(hiragana)));
+            findLearningDic(hiragana, candidates);
         }
-        set.addAll(Arrays.asList(findLearningDic(key)));
+        findLearningDic(key, candidates);
         if (hiraganaOnly) {
-            set.addAll(Arrays.asList(findSystemDic(hiragana)));
+            findSystemDic(hiragana, candidates);
+            mSearchCounter += mSymbolIndex.find(hiragana, Candidate.SOURCE_SYMBOL, SCORE_SYMBOL, candidates);
         }
 
         // 曖昧検索
         if (hiraganaOnly) {
-            set.addAll(Arrays.asList(browseSystemDic(hiragana)));
+            browseSystemDic(hiragana, candidates);
+            // 記号の補完も検索の上限に含める
+            int limit = Math.min(SYMBOL_COMPLETION_LIMIT, mSearchLimit - mSearchCounter);
+            if (limit > 0) {
+                mSearchCounter += mSymbolIndex.browse(hiragana, SYMBOL_COMPLETION_EXTRA, limit,
+                        Candidate.SOURCE_SYMBOL, SCORE_SYMBOL_COMPLETION, candidates);
+            }
         }
 
         // 辞書に無かったもの
+        int score = SCORE_INPUT;
         if (hiraganaOnly) {
-            set.add(hiragana + "\t" + hiragana);
-            set.add(hiragana + "\t" + Converter.toWideKatakana(hiragana));
+            candidates.add(hiragana, hiragana, Candidate.SOURCE_INPUT, score--);
+            // 半角カタカナはbufを全角カタカナに書き換える前に作る
+            int halfLength = 0;
             if (mConvertHalfkana) {
-                set.add(hiragana + "\t" + Converter.toHalfKatakana(hiragana));
+                if (mHalfKatakanaBuffer.length < length * 2) {
+                    mHalfKatakanaBuffer = new char[length * 2];
+                }
+                halfLength = Converter.toHalfKatakana(buf, length, mHalfKatakanaBuffer);
+            }
+            candidates.add(hiragana, new String(buf, 0, Converter.toWideKatakana(buf, length, buf)),
+                    Candidate.SOURCE_INPUT, score--);
+            if (mConvertHalfkana) {
+                candidates.add(hiragana, new String(mHalfKatakanaBuffer, 0, halfLength),
+                        Candidate.SOURCE_INPUT, score--);
             }
         }
-        set.add(key + "\t" + key);
-        set.add(key + "\t" + Converter.toWideLatin(key));
-
-        Candidate[] candidates = new Candidate[set.size()];
-        int i = 0;
-        for (String s : set) {
-            String[] ss = s.split("\t");
-            candidates[i++] = new Candidate(ss[0], ss[1]);
-        }
-        return candidates;
+        candidates.add(key, key, Candidate.SOURCE_INPUT, score--);
+        length = key.length();
+        buf = getConvertBuffer(length);
+        key.getChars(0, length, buf, 0);
+        candidates.add(key, new String(buf, 0, Converter.toWideLatin(buf, length, buf)),
+                Candidate.SOURCE_INPUT, score);
     }
 
     /**
-     * 最後に確定した候補から予測した候補を返す
+     * 最後に確定した候補から予測した候補を格納する
      *
      * @param lastCandidate 最後に確定した候補
-     * @return 予測した候補
+     * @param candidates    候補の格納先
      */
-    public Candidate[] predict(Candidate lastCandidate) {
+    public void predict(Candidate lastCandidate, CandidateList candidates) {
+        candidates.clear();
         if (lastCandidate == null) {
-            return null;
+            return;
         }
         String key = lastCandidate.key + " " + lastCandidate.value;
-        Set<String> set = new LinkedHashSet<>();
+        await(mConnectionDicFuture);
+        if (mBTreeConnectionDic == null) {
+            return;
+        }
         try {
             String value = (String) mBTreeConnectionDic.find(key);
             if (value != null) {
-                set.addAll(Arrays.asList(value.split("\t")));
+                // 「キー 表示文字列」のタブ区切り
+                int score = SCORE_CONNECTION;
+                int start = 0;
+                while (start <= value.length()) {
+                    int end = value.indexOf('\t', start);
+                    if (end < 0) {
+                        end = value.length();
+                    }
+                    int space = value.indexOf(' ', start);
+                    if (space >= 0 && space < end) {
+                        int valueEnd = value.indexOf(' ', space + 1);
+                        if (valueEnd < 0 || valueEnd > end) {
+                            valueEnd = end;
+                        }
+                        candidates.add(value.substring(start, space), value.substring(space + 1, valueEnd),
+                                Candidate.SOURCE_CONNECTION, score--);
+                    }
+                    start = end + 1;
+                }
             }
         } catch (IOException ignored) {
         }
-        if (set.size() == 0) {
-            return null;
-        }
-        Candidate[] candidates = new Candidate[set.size()];
-        int i = 0;
-        for (String s : set) {
-            String[] ss = s.split(" ");
-            candidates[i++] = new Candidate(ss[0], ss[1]);
-        }
-        return candidates;
     }
 
     private void add(String keyword, String word, RecordManager recman, BTree btree) {
@@ -370,7 +724,10 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
     }
 
     public void addLearning(String keyword, String word) {
-        add(keyword, word, mRecmanLearningDic, mBTreeLearningDic);
+        await(mLearningDicFuture);
+        synchronized (mLearningDicLock) {
+            add(keyword, word, mRecmanLearningDic, mBTreeLearningDic);
+        }
     }
 
     public void addConnection(Candidate lastCandidate, Candidate followingCandidate) {
@@ -384,6 +741,7 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
         }
         String last = lastCandidate.key + " " + lastCandidate.value;
         String following = followingCandidate.key + " " + followingCandidate.value;
+        await(mConnectionDicFuture);
         add(last, following, mRecmanConnectionDic, mBTreeConnectionDic);
     }
 
@@ -401,15 +759,22 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
     }
 
     public void importLearningDictionary(ArrayList<String> entries) {
-        importDictionary(entries, mRecmanLearningDic, mBTreeLearningDic);
+        await(mLearningDicFuture);
+        synchronized (mLearningDicLock) {
+            importDictionary(entries, mRecmanLearningDic, mBTreeLearningDic);
+        }
     }
 
     public void importConnectionDictionary(ArrayList<String> entries) {
+        await(mConnectionDicFuture);
         importDictionary(entries, mRecmanConnectionDic, mBTreeConnectionDic);
     }
 
     private ArrayList<String> exportDictionary(RecordManager recman, BTree btree) {
         ArrayList<String> list = new ArrayList<>();
+        if (recman == null || btree == null) {
+            return list;
+        }
         Tuple tuple = new Tuple();
         try {
             recman.commit();
@@ -423,10 +788,14 @@ public class Dictionary implements SharedPreferences.OnSharedPreferenceChangeLis
     }
 
     public ArrayList<String> exportLearningDictionary() {
-        return exportDictionary(mRecmanLearningDic, mBTreeLearningDic);
+        await(mLearningDicFuture);
+        synchronized (mLearningDicLock) {
+            return exportDictionary(mRecmanLearningDic, mBTreeLearningDic);
+        }
     }
 
     public ArrayList<String> exportConnectionDictionary() {
+        await(mConnectionDicFuture);
         return exportDictionary(mRecmanConnectionDic, mBTreeConnectionDic);
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import androidx.annotation.NonNull;
+
+import java.util.Enumeration;
+import java.util.Locale;
+
+import jdbm.helper.CacheEvictionException;
+import jdbm.helper.CachePolicy;
+import jdbm.helper.CachePolicyListener;
+import jdbm.helper.MRU;
+import jdbm.helper.SoftCache;
+
+/**
+ * RecordManagerのオブジェクトキャッシュ
+ * <p>
+ * jdbmのMRUキャッシュ(ソフト参照モードではSoftCacheで包んだもの)に
+ * ヒット・ミス・追い出しの回数の計測を加える。
+ * ソフト参照モードでの追い出し回数はMRUからソフト参照へ移った回数。
+ */
+public class DictionaryCache implements CachePolicy, CachePolicyListener {
+    private final String mName;
+    private final int mSize;
+    private final boolean mSoft;
+    private final CachePolicy mCache;
+    private volatile long mHitCount;
+    private volatile long mMissCount;
+    private volatile long mEvictionCount;
+
+    /**
+     * @param name キャッシュ名(ログ用)
+     * @param size MRUに保持するオブジェクト数
+     * @param soft trueならMRUから追い出したオブジェクトをソフト参照で保持する
+     */
+    public DictionaryCache(String name, int size, boolean soft) {
+        mName = name;
+        mSize = size;
+        mSoft = soft;
+        MRU mru = new MRU(size);
+        mCache = soft ? new SoftCache(mru) : mru;
+        mCache.addListener(this);
+    }
+
+    @Override
+    public void put(Object key, Object value) throws CacheEvictionException {
+        mCache.put(key, value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = mCache.get(key);
+        if (value != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return value;
+    }
+
+    @Override
+    public void remove(Object key) {
+        mCache.remove(key);
+    }
+
+    @Override
+    public void removeAll() {
+        mCache.removeAll();
+    }
+
+    @Override
+    public Enumeration elements() {
+        return mCache.elements();
+    }
+
+    @Override
+    public void addListener(CachePolicyListener listener) throws IllegalArgumentException {
+        mCache.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(CachePolicyListener listener) {
+        mCache.removeListener(listener);
+    }
+
+    @Override
+    public void cacheObjectEvicted(Object obj) {
+        mEvictionCount++;
+    }
+
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    public long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    /**
+     * 計測値をリセットする
+     */
+    public void resetStatistics() {
+        mHitCount = 0;
+        mMissCount = 0;
+        mEvictionCount = 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        long hit = mHitCount;
+        long miss = mMissCount;
+        long total = hit + miss;
+        double rate = (total == 0) ? 0 : (100.0 * hit / total);
+        return String.format(Locale.US, "%s(size=%d%s) hit=%d miss=%d evict=%d rate=%.1f%%",
+                mName, mSize, mSoft ? ",soft" : "", hit, miss, mEvictionCount, rate);
+    }
+}
@@ -14,129 +14,27 @@
  * limitations under the License.
  */
 
+
 package io.github.kachaya.ime;
 
-import android.app.Activity;
-import android.content.Intent;
-import android.net.Uri;
 import android.os.Bundle;
-import android.provider.DocumentsContract;
-import android.view.View;
-import android.widget.ArrayAdapter;
-import android.widget.Button;
-import android.widget.ListView;
-
-import androidx.activity.result.ActivityResult;
-import androidx.activity.result.ActivityResultLauncher;
-import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.appcompat.app.AppCompatActivity;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.util.ArrayList;
 
-public abstract class DictionaryTool extends AppCompatActivity {
+/**
+ * 辞書の読み込み・書き出し画面(画面を開いている間だけ辞書を開く)
+ */
+public abstract class DictionaryTool extends TextFileTool {
     public Dictionary mDictionary;
-    ActivityResultLauncher<Intent> exportResultLauncher = registerForActivityResult(
-            new ActivityResultContracts.StartActivityForResult(),
-            this::onExportActivityResult);
-    private ArrayAdapter<String> mAdapter;
-    ActivityResultLauncher<Intent> importResultLauncher = registerForActivityResult(
-            new ActivityResultContracts.StartActivityForResult(),
-            this::onImportActivityResult);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.dictionary_tool);
+        // 一覧の表示に辞書を使うので先に開く
         mDictionary = new Dictionary(this);
-
-        Button exportButton = findViewById(R.id.export_button);
-        exportButton.setOnClickListener(this::onClickExportDictionary);
-        Button importButton = findViewById(R.id.import_button);
-        importButton.setOnClickListener(this::onClickImportDictionary);
-
-        ListView listView = findViewById(R.id.list_view);
-        listView.setEmptyView(findViewById(R.id.empty_text));
-
-        ArrayList<String> dataList = new ArrayList<>();
-
-        mAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, dataList);
-        listView.setAdapter(mAdapter);
-
-        mAdapter.clear();
-        mAdapter.addAll(exportDictionary());
-        mAdapter.notifyDataSetChanged();
-    }
-
-    public abstract String getDefaultFileName();
-
-    public abstract void importDictionary(ArrayList<String> entries);
-
-    public abstract ArrayList<String> exportDictionary();
-
-    private void onClickExportDictionary(View v) {
-        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
-        intent.addCategory(Intent.CATEGORY_OPENABLE);
-        intent.setType("text/plain");
-        intent.putExtra(Intent.EXTRA_TITLE, getDefaultFileName());
-        exportResultLauncher.launch(intent);
-    }
-
-    private void onClickImportDictionary(View v) {
-        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
-        intent.addCategory(Intent.CATEGORY_OPENABLE);
-        intent.setType("text/plain");
-        intent.putExtra(DocumentsContract.EXTRA_INITIAL_URI, getDefaultFileName());
-        importResultLauncher.launch(intent);
-    }
-
-    private void onImportActivityResult(ActivityResult result) {
-        if (result.getResultCode() == Activity.RESULT_OK) {
-            Intent resultData = result.getData();
-            if (resultData != null) {
-                Uri uri = resultData.getData();
-                try {
-                    InputStream inputStream = getContentResolver().openInputStream(uri);
-                    BufferedReader reader = new BufferedReader((new InputStreamReader(inputStream)));
-                    String entry;
-                    ArrayList<String> entries = new ArrayList<>();
-                    while ((entry = reader.readLine()) != null) {
-                        entries.add(entry);
-                    }
-                    reader.close();
-                    importDictionary(entries);
-                    mAdapter.clear();
-                    mAdapter.addAll(exportDictionary());
-                    mAdapter.notifyDataSetChanged();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        super.onCreate(savedInstanceState);
     }
 
-    private void onExportActivityResult(ActivityResult result) {
-        if (result.getResultCode() == Activity.RESULT_OK) {
-            Intent resultData = result.getData();
-            if (resultData != null) {
-                Uri uri = resultData.getData();
-                try {
-                    OutputStream outputStream = getContentResolver().openOutputStream(uri);
-                    BufferedWriter writer = new BufferedWriter((new OutputStreamWriter(outputStream)));
-                    for (String entry : exportDictionary()) {
-                        writer.write(entry + "\n");
-                    }
-                    writer.flush();
-                    writer.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        }
+    @Override
+    protected void onDestroy() {
+        mDictionary.close();
+        super.onDestroy();
     }
 }
@@ -16,15 +16,15 @@
 
 package io.github.kachaya.ime;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.AttributeSet;
-import android.widget.ImageView;
+import android.view.MotionEvent;
 import android.widget.LinearLayout;
 
 import androidx.annotation.NonNull;
@@ -64,8 +64,6 @@ public class KeyboardLayout extends LinearLayout implements SharedPreferences.On
     public SoftKey mSymbolKey;
     public ArrayList<SoftKey> mSoftKeys;
 
-    public Bitmap mBitmap;
-    public Canvas mCanvas;
     public Drawable mShiftLockDrawable;
     public Drawable mShiftNoneDrawable;
     public Drawable mShiftSingleDrawable;
@@ -73,7 +71,6 @@ public class KeyboardLayout extends LinearLayout implements SharedPreferences.On
     public Drawable mSymbolEmojiDrawable;
     public Drawable mSymbolKigouDrawable;
     public Handler mRepeatHandler;
-    public ImageView mImageView;
 
     public int mBackgroundColor;
     public int mCharacterKeyBackgroundColor;
@@ -87,6 +84,16 @@ public class KeyboardLayout extends LinearLayout implements SharedPreferences.On
     public int mHeight;
     public float mDensity;
 
+    // キーを押しているポインタのID(-1なら無し)
+    private int mActivePointerId = -1;
+
+    // 座標からキーを引くための格子(各マスの中心を含むキー)
+    private SoftKey[] mKeyGrid = new SoftKey[0];
+    private int mGridCols;
+    private int mGridRows;
+    private float mGridCellWidth;
+    private float mGridCellHeight;
+
     public int mRepeatTimeout;
     public int mRepeatDelay;
     public final Runnable mRepeatRunnable = new Runnable() {
@@ -95,6 +102,8 @@ public class KeyboardLayout extends LinearLayout implements SharedPreferences.On
             if (mRepeatKey == null) {
                 return;
             }
+            // リピート中は文字の編集だけを行い、候補の作り直しはリピートの終了まで遅らせる
+            mSoftKeyboard.setKeyRepeating(true);
             processSoftKey(mRepeatKey);
             mRepeatHandler.postDelayed(this, mRepeatDelay);
         }
@@ -104,6 +113,7 @@ public class KeyboardLayout extends LinearLayout implements SharedPreferences.On
         super(context, attrs);
         mContext = context;
         mSoftKeyboard = (SoftKeyboard) context;
+        setWillNotDraw(false);  // キーはonDrawで描く
         SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         sharedPreferences.registerOnSharedPreferenceChangeListener(this);
 
@@ -180,6 +190,184 @@ public class KeyboardLayout extends LinearLayout implements SharedPreferences.On
         }
     }
 
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawColor(mBackgroundColor);
+        for (SoftKey softKey : mSoftKeys) {
+            softKey.draw(canvas);
+        }
+    }
+
+    /**
+     * キーの配置からキー検索用の格子を作る(onSizeChangedでキーを配置した後に呼ぶ)
+     * <p>
+     * キーの境界が格子の線に乗るように列数・行数を選ぶ。
+     *
+     * @param cols   列数
+     * @param rows   行数
+     * @param width  幅
+     * @param height 高さ
+     */
+    public void buildKeyGrid(int cols, int rows, int width, int height) {
+        mGridCols = cols;
+        mGridRows = rows;
+        mGridCellWidth = (float) width / cols;
+        mGridCellHeight = (float) height / rows;
+        mKeyGrid = new SoftKey[cols * rows];
+        for (int row = 0; row < rows; row++) {
+            float y = mGridCellHeight * (row + 0.5f);
+            for (int col = 0; col < cols; col++) {
+                float x = mGridCellWidth * (col + 0.5f);
+                for (SoftKey softKey : mSoftKeys) {
+                    if (softKey.contains(x, y)) {
+                        mKeyGrid[row * cols + col] = softKey;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 座標にあるキー、無ければnull
+     */
+    @Nullable
+    public SoftKey findKey(float x, float y) {
+        if (x >= 0 && y >= 0 && mKeyGrid.length > 0) {
+            int col = Math.min((int) (x / mGridCellWidth), mGridCols - 1);
+            int row = Math.min((int) (y / mGridCellHeight), mGridRows - 1);
+            SoftKey softKey = mKeyGrid[row * mGridCols + col];
+            if (softKey != null && softKey.contains(x, y)) {
+                return softKey;
+            }
+        }
+        // 格子に乗らない境界付近
+        for (SoftKey softKey : mSoftKeys) {
+            if (softKey.contains(x, y)) {
+                return softKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 複数のポインタでの入力
+     * <p>
+     * 前のキーを離す前に次のキーを押した(ロールオーバー)時は、前のキーをその時点で確定させる。
+     * 押したキーの順に入力されるので、離す順が前後しても入力順は変わらない。
+     */
+    @SuppressLint("ClickableViewAccessibility")
+    @Override
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
+        int index = event.getActionIndex();
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                releaseKey(null);
+                mActivePointerId = event.getPointerId(index);
+                pressKey(findKey(event.getX(index), event.getY(index)));
+                break;
+
+            case MotionEvent.ACTION_POINTER_DOWN:
+                releaseKey(mLastKey);   // ロールオーバー
+                mActivePointerId = event.getPointerId(index);
+                pressKey(findKey(event.getX(index), event.getY(index)));
+                break;
+
+            case MotionEvent.ACTION_MOVE: {
+                int activeIndex = event.findPointerIndex(mActivePointerId);
+                if (activeIndex < 0) {
+                    return true;
+                }
+                SoftKey currentKey = findKey(event.getX(activeIndex), event.getY(activeIndex));
+                if (currentKey == mLastKey) {
+                    return true;    // 同じキー内
+                }
+                if (mLastKey != null) {
+                    mLastKey.setPressed(false);
+                }
+                pressKey(currentKey);
+                break;
+            }
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_POINTER_UP:
+                if (event.getPointerId(index) != mActivePointerId) {
+                    return true;    // ロールオーバーで確定済み
+                }
+                releaseKey(findKey(event.getX(index), event.getY(index)));
+                break;
+
+            case MotionEvent.ACTION_CANCEL:
+                releaseKey(null);
+                break;
+
+            default:
+                break;
+        }
+        updateKeys();
+        return true;
+    }
+
+    /**
+     * キーを押す(リピートするキーなら初回リピートを予約する)
+     */
+    private void pressKey(@Nullable SoftKey softKey) {
+        stopRepeat();
+        mSoftKeyboard.setKeyRepeating(false);
+        mLastKey = softKey;
+        if (softKey == null) {
+            return;
+        }
+        softKey.setPressed(true);
+        if (softKey.isRepeatable()) {
+            mRepeatKey = softKey;
+            mRepeatHandler.postDelayed(mRepeatRunnable, mRepeatTimeout);
+        }
+    }
+
+    /**
+     * 押しているキーを離す
+     *
+     * @param softKey 入力するキー(nullなら入力しない)
+     */
+    private void releaseKey(@Nullable SoftKey softKey) {
+        stopRepeat();
+        if (mLastKey != null) {
+            mLastKey.setPressed(false);
+        }
+        mLastKey = null;
+        mActivePointerId = -1;
+        if (softKey != null) {
+            processSoftKey(softKey);
+        }
+        mSoftKeyboard.setKeyRepeating(false);
+    }
+
+    private void stopRepeat() {
+        mRepeatKey = null;
+        mRepeatHandler.removeCallbacks(mRepeatRunnable);
+    }
+
+    /**
+     * 状態に合わせてキーの表示を更新する
+     */
+    public void updateKeys() {
+        invalidateKeys();
+    }
+
+    /**
+     * 表示が変わったキーがあれば再描画する(変わっていないキーは記録済みの内容を使う)
+     */
+    public void invalidateKeys() {
+        for (SoftKey softKey : mSoftKeys) {
+            if (softKey.isDirty()) {
+                invalidate();
+                return;
+            }
+        }
+    }
+
     public void processSoftKey(@NonNull SoftKey softKey) {
         int id = softKey.getId();
         switch (id) {
@@ -24,11 +24,11 @@ public class LearningDictionaryTool extends DictionaryTool {
         return mDictionary.getLearningDictionaryName() + ".txt";
     }
 
-    public void importDictionary(ArrayList<String> entries) {
+    public void importEntries(ArrayList<String> entries) {
         mDictionary.importLearningDictionary(entries);
     }
 
-    public ArrayList<String> exportDictionary() {
+    public ArrayList<String> exportEntries() {
         return mDictionary.exportLearningDictionary();
     }
 }
@@ -16,15 +16,8 @@
 
 package io.github.kachaya.ime;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.util.AttributeSet;
-import android.view.MotionEvent;
-import android.view.ViewGroup;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
 
 import androidx.annotation.NonNull;
 
@@ -50,15 +43,12 @@ public class QwertyView extends KeyboardLayout {
 
         setOrientation(VERTICAL);
 
-        mImageView = new ImageView(context);
-//        mImageView.setImageBitmap(mBitmap);
-        addView(mImageView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1.0f));
-
         int id = 0;
         for (int row = 0; row < ROWS; row++) {
             for (int col = 0; col < COLS; col++) {
                 SoftKey softKey = new SoftKey(id);
                 softKey.setColor(mKeyForegroundColor, mCharacterKeyBackgroundColor);
+                softKey.setCharacters(charHalfNormal[id], charHalfShift[id]);
                 mSoftKeys.add(softKey);
                 id++;
             }
@@ -72,64 +62,6 @@ public class QwertyView extends KeyboardLayout {
         mSoftKeys.add(mEnterKey);
     }
 
-    @SuppressLint("ClickableViewAccessibility")
-    @Override
-    public boolean onTouchEvent(@NonNull MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
-        SoftKey currentKey = null;  // キーがない場所の場合(外へ出て行った等)
-        for (SoftKey softkey : mSoftKeys) {
-            if (softkey.contains(x, y)) {
-                currentKey = softkey;
-                break;
-            }
-        }
-        if (currentKey == null) {
-            return true;
-        }
-
-        switch (event.getAction()) {
-            case MotionEvent.ACTION_DOWN:
-                if (currentKey.isRepeatable()) {
-                    // 押されたキーの初回リピート
-                    mRepeatKey = currentKey;
-                    mRepeatHandler.postDelayed(mRepeatRunnable, mRepeatTimeout);
-                }
-                currentKey.setPressed(true);
-                mLastKey = currentKey;
-                break;
-
-            case MotionEvent.ACTION_MOVE:
-                if (currentKey.equals(mLastKey)) {
-                    return true;    // 同じキー内
-                }
-                if (currentKey.isRepeatable()) {
-                    // 移動した先のキーの初回リピート
-                    mRepeatKey = currentKey;
-                    mRepeatHandler.postDelayed(mRepeatRunnable, mRepeatTimeout);
-                }
-                if (mLastKey != null) {
-                    mLastKey.setPressed(false);
-                }
-                currentKey.setPressed(true);
-                mLastKey = currentKey;
-                break;
-
-            case MotionEvent.ACTION_UP:
-                currentKey.setPressed(false);
-                processSoftKey(currentKey);
-                mRepeatKey = null;
-                mLastKey = null;
-                break;
-
-            default:
-                break;
-        }
-        drawKeyboard();
-        invalidate();
-        return true;
-    }
-
     @Override
     public void processSoftKey(@NonNull SoftKey softKey) {
         int id = softKey.getId();
@@ -159,35 +91,23 @@ public class QwertyView extends KeyboardLayout {
         super.processSoftKey(softKey);
     }
 
-    private void drawKeyboard() {
-        if (mCanvas == null) {
-            return;
-        }
-        mCanvas.drawColor(mBackgroundColor);
-        int id = 0;
-        for (int row = 0; row < ROWS; row++) {
-            for (int col = 0; col < COLS; col++) {
-                SoftKey softKey = mSoftKeys.get(id);
-                if (mShiftSingleFlag || mShiftLockFlag) {
-                    softKey.setCharacter(charHalfShift[id]);
-                } else {
-                    softKey.setCharacter(charHalfNormal[id]);
-                }
-                id++;
-            }
-        }
-        mShiftKey.setDrawable(mShiftNoneDrawable);
-        if (mShiftLockFlag) {
-            mShiftKey.setDrawable(mShiftLockDrawable);
+    /**
+     * シフト状態に合わせてキーの表示を更新する
+     */
+    @Override
+    public void updateKeys() {
+        boolean shifted = mShiftSingleFlag || mShiftLockFlag;
+        for (int id = 0; id < ROWS * COLS; id++) {
+            mSoftKeys.get(id).setShifted(shifted);
         }
         if (mShiftSingleFlag) {
             mShiftKey.setDrawable(mShiftSingleDrawable);
+        } else if (mShiftLockFlag) {
+            mShiftKey.setDrawable(mShiftLockDrawable);
+        } else {
+            mShiftKey.setDrawable(mShiftNoneDrawable);
         }
-        for (SoftKey softKey : mSoftKeys) {
-            softKey.draw(mCanvas);
-        }
-        mImageView.setImageBitmap(mBitmap);
-        invalidate();
+        invalidateKeys();
     }
 
     @Override
@@ -195,9 +115,6 @@ public class QwertyView extends KeyboardLayout {
         super.onSizeChanged(w, h, oldw, oldh);
         mWidth = w;
         mHeight = h;
-        mBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
-        mImageView.setImageBitmap(mBitmap);
 
         float kx;
         float ky;
@@ -224,7 +141,9 @@ public class QwertyView extends KeyboardLayout {
         mCursorRightKey.setPos(kw * 5, ky, kw, kh);
         mBackspaceKey.setPos(kw * 6, ky, kw, kh);
         mEnterKey.setPos(kw * 7, ky, kw, kh);
+        // 上の段は12列、下の段は8列なので24列の格子にする
+        buildKeyGrid(COLS * 2, ROWS + 1, w, h);
 
-        drawKeyboard();
+        updateKeys();
     }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * 入力中のローマ字とそのひらがな変換結果
+ * <p>
+ * 区切り文字(母音など)の直後の位置を入力位置と変換結果の長さの組で記録しておき、
+ * 文字の追加・末尾の削除では最後の区切りより後ろだけを変換し直す。
+ */
+public class RomajiComposer implements CharSequence {
+    private final StringBuilder mInput = new StringBuilder();
+    private final StringBuilder mHiragana = new StringBuilder();
+    private RomajiTable mTable;
+
+    // 区切り(入力位置と、そこまでの変換結果の長さ)
+    private int[] mBoundaryInput = new int[16];
+    private int[] mBoundaryOutput = new int[16];
+    private int mBoundaryCount;
+
+    // 特殊な小文字化をする文字の数(あれば区切らずに全体を変換する)
+    private int mSpecialCount;
+
+    public RomajiComposer(@NonNull RomajiTable table) {
+        mTable = table;
+    }
+
+    /**
+     * 変換表を切り替える
+     *
+     * @param table 変換表
+     */
+    public void setTable(@NonNull RomajiTable table) {
+        mTable = table;
+        rebuild();
+    }
+
+    @NonNull
+    public RomajiComposer append(char ch) {
+        mInput.append(ch);
+        if (isSpecial(ch)) {
+            mSpecialCount++;
+            mBoundaryCount = 0;
+        }
+        update();
+        return this;
+    }
+
+    @NonNull
+    public RomajiComposer append(@NonNull CharSequence cs) {
+        for (int i = 0; i < cs.length(); i++) {
+            char ch = cs.charAt(i);
+            mInput.append(ch);
+            if (isSpecial(ch)) {
+                mSpecialCount++;
+                mBoundaryCount = 0;
+            }
+        }
+        update();
+        return this;
+    }
+
+    /**
+     * 指定位置の文字を削除する(末尾以外は全体を変換し直す)
+     */
+    @NonNull
+    public RomajiComposer deleteCharAt(int index) {
+        if (index != mInput.length() - 1) {
+            mInput.deleteCharAt(index);
+            rebuild();
+            return this;
+        }
+        boolean special = isSpecial(mInput.charAt(index));
+        mInput.setLength(index);
+        if (special && --mSpecialCount == 0) {
+            rebuild();  // 特殊な文字が無くなったので区切りを作り直す
+            return this;
+        }
+        while (mBoundaryCount > 0 && mBoundaryInput[mBoundaryCount - 1] > index) {
+            mBoundaryCount--;
+        }
+        update();
+        return this;
+    }
+
+    @NonNull
+    public RomajiComposer delete(int start, int end) {
+        mInput.delete(start, end);
+        rebuild();
+        return this;
+    }
+
+    public void setLength(int length) {
+        mInput.setLength(length);
+        rebuild();
+    }
+
+    @NonNull
+    public String substring(int start, int end) {
+        return mInput.substring(start, end);
+    }
+
+    /**
+     * @return 入力全体のひらがな変換結果
+     */
+    @NonNull
+    public String getHiragana() {
+        return mHiragana.toString();
+    }
+
+    /**
+     * @param length 入力の先頭からの長さ
+     * @return 入力の先頭部分のひらがな変換結果
+     */
+    @NonNull
+    public String getHiragana(int length) {
+        if (length == mInput.length()) {
+            return getHiragana();
+        }
+        int i = mBoundaryCount;
+        while (i > 0 && mBoundaryInput[i - 1] > length) {
+            i--;
+        }
+        StringBuilder sb = new StringBuilder();
+        int start = 0;
+        if (i > 0) {
+            start = mBoundaryInput[i - 1];
+            sb.append(mHiragana, 0, mBoundaryOutput[i - 1]);
+        }
+        mTable.convert(mInput, start, length, sb);
+        return sb.toString();
+    }
+
+    private boolean isSpecial(char ch) {
+        return ch >= 0x80 && Character.toLowerCase(ch) != ch;
+    }
+
+    private boolean isBoundary(char ch) {
+        if (ch >= 'A' && ch <= 'Z') {
+            ch += 'a' - 'A';
+        }
+        return mTable.isBoundary(ch);
+    }
+
+    /**
+     * 区切りを全て捨てて変換し直す
+     */
+    private void rebuild() {
+        mSpecialCount = 0;
+        for (int i = 0; i < mInput.length(); i++) {
+            if (isSpecial(mInput.charAt(i))) {
+                mSpecialCount++;
+            }
+        }
+        mBoundaryCount = 0;
+        update();
+    }
+
+    /**
+     * 最後の区切りより後ろを変換し直す
+     */
+    private void update() {
+        int start = 0;
+        if (mBoundaryCount > 0) {
+            start = mBoundaryInput[mBoundaryCount - 1];
+            mHiragana.setLength(mBoundaryOutput[mBoundaryCount - 1]);
+        } else {
+            mHiragana.setLength(0);
+        }
+        int end = mInput.length();
+        if (mSpecialCount > 0) {
+            mTable.convert(mInput, start, end, mHiragana);
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            if (isBoundary(mInput.charAt(i))) {
+                mTable.convert(mInput, start, i + 1, mHiragana);
+                start = i + 1;
+                pushBoundary(start, mHiragana.length());
+            }
+        }
+        mTable.convert(mInput, start, end, mHiragana);
+    }
+
+    private void pushBoundary(int input, int output) {
+        if (mBoundaryCount == mBoundaryInput.length) {
+            mBoundaryInput = Arrays.copyOf(mBoundaryInput, mBoundaryCount * 2);
+            mBoundaryOutput = Arrays.copyOf(mBoundaryOutput, mBoundaryCount * 2);
+        }
+        mBoundaryInput[mBoundaryCount] = input;
+        mBoundaryOutput[mBoundaryCount] = output;
+        mBoundaryCount++;
+    }
+
+    @Override
+    public int length() {
+        return mInput.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return mInput.charAt(index);
+    }
+
+    @NonNull
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return mInput.subSequence(start, end);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mInput.toString();
+    }
+}
@@ -0,0 +1,559 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * コンパイル済みのローマ字変換表
+ * <p>
+ * 変換表は先頭から順に置換していく規則の並びとして書かれている。
+ * 出力にASCII文字を含む規則(「kk」→「っk」、「nk」→「んk」など)は後続の規則の入力になるので、
+ * 表の先頭からそうした規則の最後までを「書き換え規則」として表の順に一つずつ適用する。
+ * 残りの規則は出力がかなだけなのでトライ木にまとめ、左から一回の走査で最長一致で変換する。
+ * <p>
+ * 作業用のバッファは使い回すので、変換はスレッドセーフにするためsynchronizedにしている。
+ * <p>
+ * 標準の変換表はConverterに組み込み、それ以外はテキストファイルから読み込む。
+ * コンパイル結果は元のテキストのCRC32と一緒にバイナリで保存し、次回からはそれを読み込む。
+ */
+public class RomajiTable {
+    public static final String STANDARD = "standard";
+    public static final String CUSTOM = "custom";
+    public static final String CUSTOM_FILE_NAME = "romaji_custom.txt";
+
+    private static final String TAG = "RomajiTable";
+    private static final int BINARY_MAGIC = 0x524d4a01;   // "RMJ" + 版
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    // 読み込み済みの変換表
+    private static final Map<String, RomajiTable> sLoadedTables = new HashMap<>();
+
+    // 書き換え規則
+    private final char[][] mRewritePatterns;
+    private final char[][] mRewriteOutputs;
+
+    // 最長一致の規則
+    private final char[][] mOutputs;
+    // トライ木(ノード番号で引く配列、子は兄弟のリストでたどる)
+    private char[] mNodeChar;
+    private int[] mNodeChild;
+    private int[] mNodeSibling;
+    private int[] mNodeRule;
+    private int mNodeCount;
+    // 根の子はASCIIの範囲を直接引く
+    private final int[] mRootChild = new int[128];
+    // 区切りにならない文字(昇順)
+    private final char[] mNonBoundaryChars;
+
+    // 作業用バッファ
+    private char[] mWork = new char[64];
+    private char[] mTemp = new char[64];
+    private char[] mOut = new char[64];
+    private final boolean[] mPresent = new boolean[128];
+
+    private RomajiTable(String[][] table) {
+        int split = 0;
+        for (int i = 0; i < table.length; i++) {
+            if (containsAscii(table[i][1])) {
+                split = i + 1;
+            }
+        }
+        mRewritePatterns = new char[split][];
+        mRewriteOutputs = new char[split][];
+        for (int i = 0; i < split; i++) {
+            mRewritePatterns[i] = table[i][0].toCharArray();
+            mRewriteOutputs[i] = table[i][1].toCharArray();
+        }
+
+        int ruleCount = table.length - split;
+        mOutputs = new char[ruleCount][];
+        mNodeChar = new char[ruleCount + 1];
+        mNodeChild = new int[ruleCount + 1];
+        mNodeSibling = new int[ruleCount + 1];
+        mNodeRule = new int[ruleCount + 1];
+        mNodeCount = 1;
+        mNodeChild[ROOT] = NONE;
+        mNodeSibling[ROOT] = NONE;
+        mNodeRule[ROOT] = NONE;
+        Arrays.fill(mRootChild, NONE);
+        for (int i = 0; i < ruleCount; i++) {
+            mOutputs[i] = table[split + i][1].toCharArray();
+            insert(table[split + i][0], i);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < split; i++) {
+            sb.append(table[i][0]);
+        }
+        for (int i = split; i < table.length; i++) {
+            sb.append(table[i][0], 0, table[i][0].length() - 1);
+        }
+        mNonBoundaryChars = sb.toString().toCharArray();
+        Arrays.sort(mNonBoundaryChars);
+    }
+
+    private RomajiTable(DataInputStream in) throws IOException {
+        mRewritePatterns = readCharArrays(in);
+        mRewriteOutputs = readCharArrays(in);
+        mOutputs = readCharArrays(in);
+        mNodeCount = in.readInt();
+        mNodeChar = readCharArray(in);
+        mNodeChild = readIntArray(in);
+        mNodeSibling = readIntArray(in);
+        mNodeRule = readIntArray(in);
+        int[] rootChild = readIntArray(in);
+        System.arraycopy(rootChild, 0, mRootChild, 0, mRootChild.length);
+        mNonBoundaryChars = readCharArray(in);
+    }
+
+    /**
+     * 変換表をコンパイルする
+     *
+     * @param table {ローマ字, かな}の並び
+     * @return コンパイル済みの変換表
+     */
+    public static RomajiTable compile(String[][] table) {
+        return new RomajiTable(table);
+    }
+
+    /**
+     * 変換の区切りになる文字か
+     * <p>
+     * 書き換え規則のローマ字に含まれず、最長一致の規則のローマ字の末尾以外にも現れない文字の直後では、
+     * 前後を別々に変換しても全体を変換した結果と同じになる。
+     *
+     * @param ch 文字(小文字化したもの)
+     * @return 区切りになるならtrue
+     */
+    public boolean isBoundary(char ch) {
+        return Arrays.binarySearch(mNonBoundaryChars, ch) < 0;
+    }
+
+    /**
+     * 変換表のテキストを解析する
+     *
+     * @param lines 変換表の各行(ローマ字とかなをタブで区切る)
+     * @return {ローマ字, かな}の並び
+     */
+    public static String[][] parse(List<String> lines) {
+        ArrayList<String[]> rules = new ArrayList<>();
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] ss = line.split("\t");
+            if (ss.length < 2 || ss[0].isEmpty()) {
+                continue;
+            }
+            rules.add(new String[]{ss[0], ss[1]});
+        }
+        return rules.toArray(new String[0][]);
+    }
+
+    /**
+     * 変換表を読み込む
+     * <p>
+     * 一度読み込んだものはメモリに保持し、名前が同じなら同じものを返す。
+     * 読み込めなければ標準の変換表を返す。
+     *
+     * @param context コンテキスト
+     * @param name    変換表の名前(standard, azik, custom)
+     * @return 変換表
+     */
+    @NonNull
+    public static synchronized RomajiTable load(Context context, String name) {
+        if (STANDARD.equals(name)) {
+            return Converter.getRomajiTable();
+        }
+        RomajiTable table = sLoadedTables.get(name);
+        if (table != null) {
+            return table;
+        }
+        long startTime = SystemClock.uptimeMillis();
+        byte[] source = readSource(context, name);
+        if (source == null) {
+            return Converter.getRomajiTable();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(source);
+        long crc = crc32.getValue();
+
+        File binaryFile = new File(context.getFilesDir(), "romaji_" + name + ".bin");
+        table = readBinary(binaryFile, crc);
+        if (table != null) {
+            Log.d(TAG, name + ": loaded binary in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+        } else {
+            String text = new String(source, StandardCharsets.UTF_8);
+            table = compile(parse(Arrays.asList(text.split("\r?\n"))));
+            Log.d(TAG, name + ": compiled in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+            writeBinary(binaryFile, crc, table);
+        }
+        sLoadedTables.put(name, table);
+        return table;
+    }
+
+    /**
+     * 読み込み済みの変換表を捨てる(カスタムの変換表を書き換えた時に使う)
+     *
+     * @param name 変換表の名前
+     */
+    public static synchronized void invalidate(String name) {
+        sLoadedTables.remove(name);
+    }
+
+    private static byte[] readSource(Context context, String name) {
+        try {
+            InputStream is;
+            if (CUSTOM.equals(name)) {
+                File file = new File(context.getFilesDir(), CUSTOM_FILE_NAME);
+                if (!file.exists()) {
+                    return null;
+                }
+                is = new FileInputStream(file);
+            } else {
+                is = context.getAssets().open("romaji_" + name + ".txt");
+            }
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) > 0) {
+                os.write(buf, 0, len);
+            }
+            is.close();
+            return os.toByteArray();
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    private static RomajiTable readBinary(File file, long crc) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != BINARY_MAGIC || in.readLong() != crc) {
+                return null;    // 古い形式か、元のテキストが変わった
+            }
+            return new RomajiTable(in);
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    private static void writeBinary(File file, long crc, RomajiTable table) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(BINARY_MAGIC);
+            out.writeLong(crc);
+            writeCharArrays(out, table.mRewritePatterns);
+            writeCharArrays(out, table.mRewriteOutputs);
+            writeCharArrays(out, table.mOutputs);
+            out.writeInt(table.mNodeCount);
+            writeCharArray(out, Arrays.copyOf(table.mNodeChar, table.mNodeCount));
+            writeIntArray(out, Arrays.copyOf(table.mNodeChild, table.mNodeCount));
+            writeIntArray(out, Arrays.copyOf(table.mNodeSibling, table.mNodeCount));
+            writeIntArray(out, Arrays.copyOf(table.mNodeRule, table.mNodeCount));
+            writeIntArray(out, table.mRootChild);
+            writeCharArray(out, table.mNonBoundaryChars);
+        } catch (IOException ignored) {
+            file.delete();
+        }
+    }
+
+    private static void writeCharArray(DataOutputStream out, char[] array) throws IOException {
+        out.writeInt(array.length);
+        for (char ch : array) {
+            out.writeChar(ch);
+        }
+    }
+
+    private static void writeCharArrays(DataOutputStream out, char[][] arrays) throws IOException {
+        out.writeInt(arrays.length);
+        for (char[] array : arrays) {
+            writeCharArray(out, array);
+        }
+    }
+
+    private static void writeIntArray(DataOutputStream out, int[] array) throws IOException {
+        out.writeInt(array.length);
+        for (int i : array) {
+            out.writeInt(i);
+        }
+    }
+
+    private static char[] readCharArray(DataInputStream in) throws IOException {
+        char[] array = new char[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readChar();
+        }
+        return array;
+    }
+
+    private static char[][] readCharArrays(DataInputStream in) throws IOException {
+        char[][] arrays = new char[in.readInt()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = readCharArray(in);
+        }
+        return arrays;
+    }
+
+    private static int[] readIntArray(DataInputStream in) throws IOException {
+        int[] array = new int[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = in.readInt();
+        }
+        return array;
+    }
+
+    private static boolean containsAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < 0x80) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void insert(String pattern, int rule) {
+        int node = ROOT;
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            int child = findChild(node, ch);
+            if (child == NONE) {
+                child = addNode(ch);
+                if (node == ROOT && ch < 0x80) {
+                    mRootChild[ch] = child;
+                }
+                mNodeSibling[child] = mNodeChild[node];
+                mNodeChild[node] = child;
+            }
+            node = child;
+        }
+        if (mNodeRule[node] == NONE) {
+            mNodeRule[node] = rule;    // 同じローマ字なら表の前にある規則が優先
+        }
+    }
+
+    private int addNode(char ch) {
+        if (mNodeCount == mNodeChar.length) {
+            int size = mNodeCount * 2;
+            mNodeChar = Arrays.copyOf(mNodeChar, size);
+            mNodeChild = Arrays.copyOf(mNodeChild, size);
+            mNodeSibling = Arrays.copyOf(mNodeSibling, size);
+            mNodeRule = Arrays.copyOf(mNodeRule, size);
+        }
+        int node = mNodeCount++;
+        mNodeChar[node] = ch;
+        mNodeChild[node] = NONE;
+        mNodeSibling[node] = NONE;
+        mNodeRule[node] = NONE;
+        return node;
+    }
+
+    private int findChild(int node, char ch) {
+        if (node == ROOT && ch < 0x80) {
+            return mRootChild[ch];
+        }
+        for (int child = mNodeChild[node]; child != NONE; child = mNodeSibling[child]) {
+            if (mNodeChar[child] == ch) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * ローマ字をかなに変換する
+     *
+     * @param cs ローマ字
+     * @return かな
+     */
+    @NonNull
+    public synchronized String convert(@NonNull CharSequence cs) {
+        int len = convert(cs, 0, cs.length());
+        return new String(mOut, 0, len);
+    }
+
+    /**
+     * ローマ字をかなに変換してStringBuilderに追加する
+     *
+     * @param cs    ローマ字
+     * @param start 開始位置
+     * @param end   終了位置
+     * @param sb    追加先
+     */
+    public synchronized void convert(@NonNull CharSequence cs, int start, int end, @NonNull StringBuilder sb) {
+        int len = convert(cs, start, end);
+        sb.append(mOut, 0, len);
+    }
+
+    /**
+     * 変換してmOutに格納する
+     *
+     * @return 変換結果の長さ
+     */
+    private int convert(CharSequence cs, int start, int end) {
+        int len = end - start;
+        mWork = ensureCapacity(mWork, len);
+        for (int i = 0; i < len; i++) {
+            char ch = cs.charAt(start + i);
+            if (ch >= 'A' && ch <= 'Z') {
+                ch += 'a' - 'A';
+            } else if (ch >= 0x80 && Character.toLowerCase(ch) != ch) {
+                // 特殊な小文字化(文脈依存のものなど)があり得るのでStringに任せる
+                String s = cs.subSequence(start, end).toString().toLowerCase();
+                return convertLowerCase(s, s.length());
+            }
+            mWork[i] = ch;
+        }
+        return convertLowerCase(null, len);
+    }
+
+    private int convertLowerCase(String s, int len) {
+        if (s != null) {
+            mWork = ensureCapacity(mWork, len);
+            s.getChars(0, len, mWork, 0);
+        }
+        Arrays.fill(mPresent, false);
+        for (int i = 0; i < len; i++) {
+            if (mWork[i] < 0x80) {
+                mPresent[mWork[i]] = true;
+            }
+        }
+        for (int r = 0; r < mRewritePatterns.length; r++) {
+            char first = mRewritePatterns[r][0];
+            if (first < 0x80 && !mPresent[first]) {
+                continue;   // 先頭の文字が無ければ置換は起こらない
+            }
+            len = rewrite(r, len);
+        }
+        return match(len);
+    }
+
+    /**
+     * 書き換え規則を一つ適用する(重ならないように左から順に置換する)
+     *
+     * @return 置換後の長さ
+     */
+    private int rewrite(int r, int len) {
+        char[] pattern = mRewritePatterns[r];
+        char[] output = mRewriteOutputs[r];
+        int plen = pattern.length;
+        int w = 0;
+        int i = 0;
+        boolean replaced = false;
+        while (i < len) {
+            if (i + plen <= len && regionMatches(mWork, i, pattern)) {
+                mTemp = ensureCapacity(mTemp, w + output.length + (len - i - plen));
+                System.arraycopy(output, 0, mTemp, w, output.length);
+                w += output.length;
+                i += plen;
+                replaced = true;
+            } else {
+                mTemp = ensureCapacity(mTemp, w + 1);
+                mTemp[w++] = mWork[i++];
+            }
+        }
+        if (!replaced) {
+            return len;
+        }
+        for (char ch : output) {
+            if (ch < 0x80) {
+                mPresent[ch] = true;
+            }
+        }
+        char[] t = mWork;
+        mWork = mTemp;
+        mTemp = t;
+        return w;
+    }
+
+    private static boolean regionMatches(char[] buf, int offset, char[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (buf[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 最長一致で変換してmOutに格納する
+     *
+     * @return 変換結果の長さ
+     */
+    private int match(int len) {
+        int w = 0;
+        int i = 0;
+        while (i < len) {
+            int rule = NONE;
+            int ruleEnd = i;
+            int node = ROOT;
+            for (int j = i; j < len; j++) {
+                node = findChild(node, mWork[j]);
+                if (node == NONE) {
+                    break;
+                }
+                if (mNodeRule[node] != NONE) {
+                    rule = mNodeRule[node];
+                    ruleEnd = j + 1;
+                }
+            }
+            if (rule == NONE) {
+                mOut = ensureCapacity(mOut, w + 1);
+                mOut[w++] = mWork[i++];
+            } else {
+                char[] output = mOutputs[rule];
+                mOut = ensureCapacity(mOut, w + output.length);
+                System.arraycopy(output, 0, mOut, w, output.length);
+                w += output.length;
+                i = ruleEnd;
+            }
+        }
+        return w;
+    }
+
+    private static char[] ensureCapacity(char[] buf, int size) {
+        if (buf.length >= size) {
+            return buf;
+        }
+        return Arrays.copyOf(buf, Math.max(size, buf.length * 2));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * カスタムのローマ字変換表の読み込み・書き出し
+ * <p>
+ * カスタムの変換表が無ければ標準の変換表を書き出すので、それを編集して読み込ませる。
+ */
+public class RomajiTableTool extends TextFileTool {
+
+    public String getDefaultFileName() {
+        return RomajiTable.CUSTOM_FILE_NAME;
+    }
+
+    public void importEntries(ArrayList<String> entries) {
+        File file = new File(getFilesDir(), RomajiTable.CUSTOM_FILE_NAME);
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+            for (String entry : entries) {
+                writer.write(entry + "\n");
+            }
+            writer.close();
+        } catch (IOException ignored) {
+        }
+        RomajiTable.invalidate(RomajiTable.CUSTOM);
+    }
+
+    public ArrayList<String> exportEntries() {
+        ArrayList<String> entries = new ArrayList<>();
+        File file = new File(getFilesDir(), RomajiTable.CUSTOM_FILE_NAME);
+        if (file.exists()) {
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(file));
+                String entry;
+                while ((entry = reader.readLine()) != null) {
+                    entries.add(entry);
+                }
+                reader.close();
+                return entries;
+            } catch (IOException ignored) {
+                entries.clear();
+            }
+        }
+        for (String[] rule : Converter.getRomajiRules()) {
+            entries.add(rule[0] + "\t" + rule[1]);
+        }
+        return entries;
+    }
+}
@@ -19,17 +19,33 @@ package io.github.kachaya.ime;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
 import android.graphics.RectF;
+import android.graphics.RenderNode;
 import android.graphics.drawable.Drawable;
 
 import androidx.annotation.NonNull;
 
+/**
+ * ソフトキー
+ * <p>
+ * ハードウェアアクセラレーションが有効な時はキーごとのRenderNodeに描画内容を記録しておき、
+ * 表示が変わった(dirtyな)キーだけを記録し直す。
+ * 文字のキーは通常・シフトの2つのラベルの文字列と配置をキーの高さが変わった時だけ計算しておく。
+ */
 public class SoftKey {
     private final int mId;
     private final RectF mRect = new RectF();
+    private final RenderNode mRenderNode;
+    private boolean mDirty = true;
     private final Paint mPaintText = new Paint(Paint.ANTI_ALIAS_FLAG);
     private final Paint mPaintBackground = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private char mCharacter;
+    private final char[] mCharacters = new char[2];     // 通常・シフト
+    private final String[] mLabels = new String[2];
+    private final float[] mLabelOffsetX = new float[2];  // キーの中心からの文字列の位置
+    private float mLabelOffsetY;
+    private float mLabelHeight;     // ラベルの配置を計算した時のキーの高さ(0なら未計算)
+    private boolean mShifted;
     private Drawable mDrawable;
     private boolean mRepeatable;
     private boolean mPressed;
@@ -38,6 +54,7 @@ public class SoftKey {
 
     public SoftKey(int id) {
         mId = id;
+        mRenderNode = new RenderNode("SoftKey" + id);
     }
 
     public int getId() {
@@ -45,23 +62,60 @@ public class SoftKey {
     }
 
     public void setPos(float x, float y, float w, float h) {
+        if (h != mRect.height()) {
+            mLabelHeight = 0;
+        }
         mRect.left = x;
         mRect.top = y;
         mRect.right = x + w;
         mRect.bottom = y + h;
+        // RenderNodeの位置は整数なので、はみ出さないように外側へ丸める
+        mRenderNode.setPosition((int) Math.floor(mRect.left), (int) Math.floor(mRect.top),
+                (int) Math.ceil(mRect.right), (int) Math.ceil(mRect.bottom));
+        mDirty = true;
     }
 
     public void setColor(int foregroundColor, int backgroundColor) {
-        mForegroundColor = foregroundColor;
-        mBackgroundColor = backgroundColor;
+        if (mForegroundColor != foregroundColor || mBackgroundColor != backgroundColor) {
+            mForegroundColor = foregroundColor;
+            mBackgroundColor = backgroundColor;
+            mDirty = true;
+        }
     }
 
     public void setCharacter(char c) {
-        mCharacter = c;
+        setCharacters(c, c);
+    }
+
+    /**
+     * @param normal 通常の文字
+     * @param shift  シフト中の文字
+     */
+    public void setCharacters(char normal, char shift) {
+        if (mCharacters[0] != normal || mCharacters[1] != shift) {
+            mCharacters[0] = normal;
+            mCharacters[1] = shift;
+            mLabels[0] = Character.toString(normal);
+            mLabels[1] = (shift == normal) ? mLabels[0] : Character.toString(shift);
+            mLabelHeight = 0;
+            mDirty = true;
+        }
+    }
+
+    public void setShifted(boolean b) {
+        if (mShifted != b) {
+            mShifted = b;
+            if (mCharacters[0] != mCharacters[1]) {
+                mDirty = true;
+            }
+        }
     }
 
     public void setDrawable(Drawable d) {
-        mDrawable = d;
+        if (mDrawable != d) {
+            mDrawable = d;
+            mDirty = true;
+        }
     }
 
     public boolean isRepeatable() {
@@ -73,7 +127,17 @@ public class SoftKey {
     }
 
     public void setPressed(boolean b) {
-        mPressed = b;
+        if (mPressed != b) {
+            mPressed = b;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * @return 前回の描画から表示が変わっていればtrue
+     */
+    public boolean isDirty() {
+        return mDirty;
     }
 
     public boolean contains(float x, float y) {
@@ -81,6 +145,22 @@ public class SoftKey {
     }
 
     public void draw(Canvas canvas) {
+        if (!canvas.isHardwareAccelerated()) {
+            drawContent(canvas);
+            mDirty = false;
+            return;
+        }
+        if (mDirty || !mRenderNode.hasDisplayList()) {
+            RecordingCanvas recordingCanvas = mRenderNode.beginRecording();
+            recordingCanvas.translate(-mRenderNode.getLeft(), -mRenderNode.getTop());
+            drawContent(recordingCanvas);
+            mRenderNode.endRecording();
+            mDirty = false;
+        }
+        canvas.drawRenderNode(mRenderNode);
+    }
+
+    private void drawContent(Canvas canvas) {
         if (mPressed) {
             mPaintBackground.setColor(Color.GRAY);
         } else {
@@ -93,7 +173,7 @@ public class SoftKey {
             drawDrawableKey(canvas);
             return;
         }
-        if (mCharacter > ' ') {
+        if (mCharacters[mShifted ? 1 : 0] > ' ') {
             drawCharacterKey(canvas);
         }
     }
@@ -110,12 +190,24 @@ public class SoftKey {
     }
 
     private void drawCharacterKey(@NonNull Canvas canvas) {
-        String text = Character.toString(mCharacter);
+        if (mLabelHeight != mRect.height()) {
+            layoutLabels();
+        }
+        int i = mShifted ? 1 : 0;
         mPaintText.setColor(mForegroundColor);
-        mPaintText.setTextSize(mRect.height() * 0.5f);
+        canvas.drawText(mLabels[i], mRect.centerX() + mLabelOffsetX[i], mRect.centerY() + mLabelOffsetY, mPaintText);
+    }
+
+    /**
+     * 文字の大きさと、キーの中心からの配置を計算する
+     */
+    private void layoutLabels() {
+        mLabelHeight = mRect.height();
+        mPaintText.setTextSize(mLabelHeight * 0.5f);
         Paint.FontMetrics fontMetrics = mPaintText.getFontMetrics();
-        float x = mRect.centerX() - (mPaintText.measureText(text) / 2.0f);
-        float y = mRect.centerY() - ((fontMetrics.ascent + fontMetrics.descent) / 2.0f);
-        canvas.drawText(text, x, y, mPaintText);
+        mLabelOffsetY = -((fontMetrics.ascent + fontMetrics.descent) / 2.0f);
+        for (int i = 0; i < mLabels.length; i++) {
+            mLabelOffsetX[i] = (mLabels[i] == null) ? 0 : -(mPaintText.measureText(mLabels[i]) / 2.0f);
+        }
     }
 }
@@ -16,38 +16,43 @@
 
 package io.github.kachaya.ime;
 
-import android.content.Context;
 import android.content.SharedPreferences;
 import android.inputmethodservice.InputMethodService;
+import android.os.SystemClock;
 import android.text.SpannableString;
 import android.text.Spanned;
 import android.text.style.BackgroundColorSpan;
 import android.text.style.UnderlineSpan;
-import android.view.ContextThemeWrapper;
+import android.util.Log;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
-import android.view.ViewGroup;
+import android.view.ViewStub;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.widget.LinearLayout;
-import android.widget.TextView;
 
 import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 public class SoftKeyboard extends InputMethodService {
 
+    private static final String TAG = "SoftKeyboard";
+
     private View mInputView;
-    private View mCandidateView;
-    private ViewGroup mCandidateLayout;
+    private RecyclerView mCandidateView;
+    private CandidateAdapter mCandidateAdapter;
     private StrokeView mStrokeView;
     private QwertyView mQwertyView;
     private SymbolView mSymbolView;
     private String mKeyboardLayout;
 
-    /** 入力テキスト */
-    private StringBuilder mInputText;
+    /** 入力テキスト(ひらがな変換結果も保持する) */
+    private RomajiComposer mInputText;
+    /** ローマ字変換表 */
+    private RomajiTable mRomajiTable;
     /** 変換対象長 */
     private int mConvertLength;
 
@@ -55,16 +60,45 @@ public class SoftKeyboard extends InputMethodService {
     private boolean isPrediction;
     /** 選択中の候補 */
     private int mCandidateIndex;
+    /** キーリピート中(候補の作り直しはリピートが終わるまで遅らせる) */
+    private boolean mKeyRepeating;
+    /** 遅らせている候補の作り直し */
+    private int mPendingCandidate = PENDING_NONE;
+    private static final int PENDING_NONE = 0;
+    private static final int PENDING_CONVERSION = 1;    // 入力テキスト全体の変換候補
+    private static final int PENDING_PARTIAL = 2;       // 変換対象長までの変換候補
+    private static final int PENDING_PREDICTION = 3;    // 予測候補
 
     private Dictionary mDictionary;
-    private Candidate[] mCandidates;
+    /** 候補(使い回す) */
+    private final CandidateList mCandidates = new CandidateList();
     private Candidate mLastCandidate;
 
+    /** onCreateの時刻(キーボードが最初に表示されるまでの時間の計測用) */
+    private long mCreateTime;
+
     @Override
     public void onCreate() {
         super.onCreate();
+        mCreateTime = SystemClock.uptimeMillis();
         mDictionary = new Dictionary(this);
-        mInputText = new StringBuilder();
+        mRomajiTable = Converter.getRomajiTable();
+        mInputText = new RomajiComposer(mRomajiTable);
+    }
+
+    @Override
+    public void onDestroy() {
+        mDictionary.close();
+        super.onDestroy();
+    }
+
+    @Override
+    public void onWindowShown() {
+        super.onWindowShown();
+        if (mCreateTime != 0) {
+            Log.d(TAG, "time to first keyboard: " + (SystemClock.uptimeMillis() - mCreateTime) + " ms");
+            mCreateTime = 0;
+        }
     }
 
     @Override
@@ -73,40 +107,94 @@ public class SoftKeyboard extends InputMethodService {
         mInputView = layout;
 
         mCandidateView = layout.findViewById(R.id.candidate_view);
-        mCandidateLayout = layout.findViewById(R.id.candidate_layout);
+        mCandidateView.setLayoutManager(new LinearLayoutManager(this, LinearLayoutManager.HORIZONTAL, false));
+        mCandidateView.setItemAnimator(null);   // 打鍵ごとに更新するのでアニメーションはしない
+        mCandidateAdapter = new CandidateAdapter(this::onClickCandidate);
+        mCandidateView.setAdapter(mCandidateAdapter);
 
-        mStrokeView = layout.findViewById(R.id.stroke_view);
-        mQwertyView = layout.findViewById(R.id.qwerty_view);
-        mSymbolView = layout.findViewById(R.id.symbol_view);
+        // キーボードは最初に表示するときに生成する
+        mStrokeView = null;
+        mQwertyView = null;
+        mSymbolView = null;
 
         return mInputView;
     }
 
-    @Override
-    public void onStartInputView(EditorInfo editorInfo, boolean restarting) {
-        super.onStartInputView(editorInfo, restarting);
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        mKeyboardLayout = sharedPreferences.getString("keyboard_layout", "qwerty");
+    private QwertyView getQwertyView() {
+        if (mQwertyView == null) {
+            mQwertyView = (QwertyView) ((ViewStub) mInputView.findViewById(R.id.qwerty_stub)).inflate();
+        }
+        return mQwertyView;
+    }
+
+    private StrokeView getStrokeView() {
+        if (mStrokeView == null) {
+            mStrokeView = (StrokeView) ((ViewStub) mInputView.findViewById(R.id.stroke_stub)).inflate();
+        }
+        return mStrokeView;
+    }
+
+    private SymbolView getSymbolView() {
+        if (mSymbolView == null) {
+            mSymbolView = (SymbolView) ((ViewStub) mInputView.findViewById(R.id.symbol_stub)).inflate();
+        }
+        return mSymbolView;
+    }
+
+    /**
+     * 指定したキーボードだけを表示する(生成済みのキーボードのみ切り替える)
+     */
+    private void showKeyboard(View keyboard) {
+        setKeyboardVisibility(mQwertyView, keyboard);
+        setKeyboardVisibility(mStrokeView, keyboard);
+        setKeyboardVisibility(mSymbolView, keyboard);
+    }
+
+    private static void setKeyboardVisibility(View view, View shown) {
+        if (view != null) {
+            view.setVisibility(view == shown ? View.VISIBLE : View.INVISIBLE);
+        }
+    }
+
+    /**
+     * 設定されたテキストキーボードを表示する
+     */
+    private void showTextKeyboard() {
         switch (mKeyboardLayout) {
             default:
             case "qwerty":
-                mQwertyView.setVisibility(View.VISIBLE);
-                mStrokeView.setVisibility(View.INVISIBLE);
-                mSymbolView.setVisibility(View.INVISIBLE);
+                showKeyboard(getQwertyView());
                 break;
             case "stroke":
-                mQwertyView.setVisibility(View.INVISIBLE);
-                mStrokeView.setVisibility(View.VISIBLE);
-                mSymbolView.setVisibility(View.INVISIBLE);
+                showKeyboard(getStrokeView());
                 break;
         }
+    }
+
+    @Override
+    public void onStartInputView(EditorInfo editorInfo, boolean restarting) {
+        super.onStartInputView(editorInfo, restarting);
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        mKeyboardLayout = sharedPreferences.getString("keyboard_layout", "qwerty");
+        showTextKeyboard();
+        RomajiTable romajiTable = RomajiTable.load(this, sharedPreferences.getString("romaji_table", RomajiTable.STANDARD));
+        if (romajiTable != mRomajiTable) {
+            mRomajiTable = romajiTable;
+            mInputText.setTable(romajiTable);
+        }
         mInputText.setLength(0);
         mConvertLength = 0;
-        mCandidateLayout.removeAllViewsInLayout();
-        mCandidateIndex = -1;
+        mKeyRepeating = false;
+        clearCandidateText();
         mLastCandidate = null;
     }
 
+    @Override
+    public void onFinishInputView(boolean finishingInput) {
+        super.onFinishInputView(finishingInput);
+        Log.d(TAG, "dictionary cache: " + mDictionary.getCacheStatistics());
+    }
+
     private void icSetComposingText() {
         InputConnection ic = getCurrentInputConnection();
         if (ic == null) {
@@ -132,15 +220,16 @@ public class SoftKeyboard extends InputMethodService {
         icCommitText(mInputText);
         mInputText.setLength(0);
         mConvertLength = 0;
-        mCandidateLayout.removeAllViewsInLayout();
-        mCandidateIndex = -1;
+        clearCandidateText();
     }
 
     /**
      * 選択中の候補をコミット
      */
     private void commitCandidateText() {
-        Candidate candidate = mCandidates[mCandidateIndex];
+        // 候補は次の検索で書き換えられるのでコピーしておく
+        Candidate selected = mCandidates.get(mCandidateIndex);
+        Candidate candidate = new Candidate(selected.key, selected.value);
         mDictionary.addLearning(candidate.key, candidate.value);
 
         if (mLastCandidate != null) {
@@ -148,7 +237,6 @@ public class SoftKeyboard extends InputMethodService {
             mDictionary.addConcatenation(mLastCandidate, candidate);
         }
 
-        mCandidateLayout.removeAllViewsInLayout();
         mCandidateIndex = -1;
         mLastCandidate = candidate;
 
@@ -207,6 +295,7 @@ public class SoftKeyboard extends InputMethodService {
      * Enterキー処理
      */
     public void handleEnter() {
+        flushCandidate();
         if (mInputText.length() == 0) {
             // 未入力
             mLastCandidate = null;  // 続く入力を連接させない
@@ -221,8 +310,7 @@ public class SoftKeyboard extends InputMethodService {
             commitInputText();
             icCommitText(mInputText);
             mInputText.setLength(0);
-            mCandidateLayout.removeAllViewsInLayout();
-            mCandidateIndex = -1;
+            clearCandidateText();
         }
     }
 
@@ -230,13 +318,18 @@ public class SoftKeyboard extends InputMethodService {
      * スペースキー処理
      */
     public void handleSpace() {
+        flushCandidate();
         if (mInputText.length() == 0) {
             // 未入力
             mLastCandidate = null;  // 続く入力を連接させない
             sendDownUpKeyEvents(KeyEvent.KEYCODE_SPACE);
             return;
         }
-        mCandidateIndex = (mCandidateIndex + 1) % mCandidateLayout.getChildCount();
+        int count = mCandidateAdapter.getItemCount();
+        if (count == 0) {
+            return;
+        }
+        mCandidateIndex = (mCandidateIndex + 1) % count;
         selectCandidate();
     }
 
@@ -258,9 +351,9 @@ public class SoftKeyboard extends InputMethodService {
         mConvertLength = mInputText.length();
         icSetComposingText();
         if (mInputText.length() == 0) {
-            buildPredictionCandidate();
+            requestCandidate(PENDING_PREDICTION);
         } else {
-            buildConversionCandidate();
+            requestCandidate(PENDING_CONVERSION);
         }
     }
 
@@ -276,10 +369,7 @@ public class SoftKeyboard extends InputMethodService {
             mConvertLength = 1;
         }
         icSetComposingText();
-
-        isPrediction = false;
-        mCandidates = mDictionary.search(mInputText.substring(0, mConvertLength));
-        setCandidateText();
+        requestCandidate(PENDING_PARTIAL);
     }
 
     public void handleCursorRight() {
@@ -294,10 +384,7 @@ public class SoftKeyboard extends InputMethodService {
             mConvertLength = mInputText.length();
         }
         icSetComposingText();
-
-        isPrediction = false;
-        mCandidates = mDictionary.search(mInputText.substring(0, mConvertLength));
-        setCandidateText();
+        requestCandidate(PENDING_PARTIAL);
     }
 
     public void handleCursorUp() {
@@ -328,9 +415,7 @@ public class SoftKeyboard extends InputMethodService {
             commitInputText();
         }
         mLastCandidate = null;  // 続く入力を連接させない
-        mQwertyView.setVisibility(View.INVISIBLE);
-        mStrokeView.setVisibility(View.INVISIBLE);
-        mSymbolView.setVisibility(View.VISIBLE);
+        showKeyboard(getSymbolView());
     }
 
     /**
@@ -340,19 +425,7 @@ public class SoftKeyboard extends InputMethodService {
         if (mInputText.length() > 0) {
             commitInputText();
         }
-        switch (mKeyboardLayout) {
-            default:
-            case "qwerty":
-                mQwertyView.setVisibility(View.VISIBLE);
-                mStrokeView.setVisibility(View.INVISIBLE);
-                mSymbolView.setVisibility(View.INVISIBLE);
-                break;
-            case "stroke":
-                mQwertyView.setVisibility(View.INVISIBLE);
-                mStrokeView.setVisibility(View.VISIBLE);
-                mSymbolView.setVisibility(View.INVISIBLE);
-                break;
-        }
+        showTextKeyboard();
     }
 
     /**
@@ -360,7 +433,16 @@ public class SoftKeyboard extends InputMethodService {
      */
     private void buildConversionCandidate() {
         isPrediction = false;
-        mCandidates = mDictionary.search(mInputText.toString());
+        mDictionary.search(mInputText.toString(), mInputText.getHiragana(), mCandidates);
+        setCandidateText();
+    }
+
+    /**
+     * 入力中の文字列の変換対象長までから変換候補を作り出す
+     */
+    private void buildPartialConversionCandidate() {
+        isPrediction = false;
+        mDictionary.search(mInputText.substring(0, mConvertLength), mInputText.getHiragana(mConvertLength), mCandidates);
         setCandidateText();
     }
 
@@ -369,15 +451,65 @@ public class SoftKeyboard extends InputMethodService {
      */
     private void buildPredictionCandidate() {
         isPrediction = true;
-        mCandidates = mDictionary.predict(mLastCandidate);
-        if (mCandidates == null) {
+        mDictionary.predict(mLastCandidate, mCandidates);
+        setCandidateText();
+    }
+
+    /**
+     * キーリピートの開始・終了を通知する(終了したら遅らせていた候補を作る)
+     *
+     * @param repeating リピート中ならtrue
+     */
+    public void setKeyRepeating(boolean repeating) {
+        mKeyRepeating = repeating;
+        if (!repeating) {
+            flushCandidate();
+        }
+    }
+
+    /**
+     * 候補を作り直す(キーリピート中は最後の要求だけを覚えておき、リピートの終了時にまとめて作る)
+     *
+     * @param kind 作り直す候補の種類
+     */
+    private void requestCandidate(int kind) {
+        if (mKeyRepeating) {
+            mPendingCandidate = kind;
             return;
         }
-        setCandidateText();
+        buildCandidate(kind);
     }
 
-    private void onClickCandidateTextListener(View view) {
-        mCandidateIndex = mCandidateLayout.indexOfChild(view);
+    /**
+     * 遅らせている候補の作り直しがあれば今すぐ行う
+     */
+    private void flushCandidate() {
+        if (mPendingCandidate != PENDING_NONE) {
+            buildCandidate(mPendingCandidate);
+        }
+    }
+
+    private void buildCandidate(int kind) {
+        switch (kind) {
+            case PENDING_CONVERSION:
+                buildConversionCandidate();
+                break;
+            case PENDING_PARTIAL:
+                buildPartialConversionCandidate();
+                break;
+            case PENDING_PREDICTION:
+                buildPredictionCandidate();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onClickCandidate(int position) {
+        if (mPendingCandidate != PENDING_NONE) {
+            return;     // 表示中の候補は入力テキストと合っていない
+        }
+        mCandidateIndex = position;
         commitCandidateText();
     }
 
@@ -385,43 +517,24 @@ public class SoftKeyboard extends InputMethodService {
      * 候補ビューに候補一覧を表示する
      */
     private void setCandidateText() {
+        mPendingCandidate = PENDING_NONE;
         mCandidateIndex = -1;
-        mCandidateLayout.removeAllViewsInLayout();
-        mCandidateView.scrollTo(0, 0);
-        if (mCandidates == null) {
-            return;
-        }
-        int style = R.style.CandidateText;
-        Context context = new ContextThemeWrapper(this, style);
-        for (Candidate candidate : mCandidates) {
-            TextView view = new TextView(context, null, style);
-            view.setText(candidate.value);    // 表示用テキスト
-            view.setOnClickListener(this::onClickCandidateTextListener);
-            mCandidateLayout.addView(view);
-        }
+        mCandidateAdapter.setCandidates(mCandidates);
+        mCandidateView.scrollToPosition(0);
+    }
+
+    /**
+     * 候補ビューを空にする
+     */
+    private void clearCandidateText() {
+        mCandidates.clear();
+        setCandidateText();
     }
 
     private void selectCandidate() {
-        TextView view;
-        int cX = mCandidateView.getScrollX();
-        int cW = mCandidateView.getWidth();
-        for (int i = 0; i < mCandidateLayout.getChildCount(); i++) {
-            view = (TextView) mCandidateLayout.getChildAt(i);
-            if (i == mCandidateIndex) {
-                // 見える場所にスクロールする
-                int bT = view.getTop();
-                int bL = view.getLeft();
-                int bR = view.getRight();
-                if (bL < cX) {
-                    mCandidateView.scrollTo(bL, bT);
-                }
-                if (bR > (cX + cW)) {
-                    mCandidateView.scrollTo(bR - cW, bT);
-                }
-                view.setSelected(true);
-            } else {
-                view.setSelected(false);
-            }
+        mCandidateAdapter.setSelectedIndex(mCandidateIndex);
+        if (mCandidateIndex >= 0) {
+            mCandidateView.scrollToPosition(mCandidateIndex);   // 見える場所にスクロールする
         }
     }
 }
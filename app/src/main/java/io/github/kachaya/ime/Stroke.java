@@ -16,13 +16,13 @@
 
 package io.github.kachaya.ime;
 
-import android.graphics.Matrix;
-import android.graphics.Path;
-import android.graphics.PathMeasure;
-import android.graphics.PointF;
-import android.graphics.RectF;
-
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /*
  * テーブルを見やすくするために制御用のキーは大文字のアルファベットで表す
@@ -37,372 +37,464 @@ import java.util.ArrayList;
  * 'R' right
  * 'S' symbol
  * 'U' up
+ *
+ * 座標はStrokeBufferのfloatの配列で受け取り、リサンプル・正規化・手本との比較まで
+ * Androidのクラスを使わずに行う(タッチイベントからStrokeBufferへの変換はStrokeView)。
  */
 public class Stroke {
+    // 比較する点の数
+    private static final int POINTS = 96;
+    // 粗い比較に使う点の数と、粗い比較で残して詳しく比較する候補の数
+    private static final int COARSE_POINTS = 16;
+    private static final int CANDIDATES = 8;
+    // 方向ごとに許す回転のずれ(度)
+    private static final double MAX_ROTATE = 10.0;
+    // 比較に使う点の位置(配列上の添字)
+    private static final int[] FULL_INDEX = new int[POINTS];
+    private static final int[] COARSE_INDEX = new int[COARSE_POINTS];
+    private static final int BINARY_MAGIC = 0x53544b01;   // "STK" + 版
 
-    private static final ArrayList<Model> models = new ArrayList<Model>() {
-        {
-            // 縦横
-            add(new Model(new Chars[]{
-                    new Chars('i', '1', '\''),
-                    new Chars(' ', ' ', '-'),
-                    new Chars('C', 'N', '!'),
-                    new Chars('B', 'B', 'B'),
-            }, "m 6,0 v 12"));   // '1'
-            // 斜め
-            add(new Model(new Chars[]{
-                    new Chars('E', 'E', ','),
-                    new Chars('S', 'S', '\\'),
-                    new Chars('M', 'M', '/'),
-                    null,
-            }, "m 12,0 -12,12"));   // ','
-            // 縦横往復
-            add(new Model(new Chars[]{
-                    new Chars('D', 'D', ':'),
-                    new Chars('R', 'R', '_'),
-                    new Chars('U', 'U', '|'),
-                    new Chars('L', 'L', 'N'),
-            }, "m 6,0 v 12 -12"));      // ':'
-            // 斜め往復
-            add(new Model(new Chars[]{
-                    new Chars('N', '8', ';'),
-                    null,
-                    new Chars('P', 'P', 'P'),
-                    null,
-            }, "m 12,0 -12,12 12,-12"));      // ';'
-            // L型
-            add(new Model(new Chars[]{
-                    new Chars('l', '4', '('),
-                    null,
-                    null,
-                    new Chars('f', 'N', 'N'),
-            }, "m 0,0 v 12 h 12"));      // 'l'
-            add(new Model(new Chars[]{
-                    new Chars('t', '7', '?'),
-                    new Chars('f', 'N', 'N'),
-                    null,
-                    new Chars('j', 'N', ','),
-            }, "m 0,0 h 12 v 12"));      // 't'
-            // <>
-            add(new Model(new Chars[]{
-                    new Chars('N', 'N', '<'),
-                    new Chars('v', '0', 'N'),
-                    new Chars('t', '7', ')'),
-                    new Chars('a', '1', '^'),
-            }, "m 12,12 -12,-6 12,-6"));            // '<'
-            add(new Model(new Chars[]{
-                    new Chars('N', 'N', '>'),
-                    new Chars('N', 'N', '^'),
-                    new Chars('c', '4', '('),
-                    new Chars('u', '0', 'N'),
-            }, "m 0,12 12,-6 -12,-6"));            // '>'
-            // (
-            add(new Model(new Chars[]{
-                    new Chars('c', '4', '('),
-                    new Chars('u', '0', 'N'),
-                    new Chars('N', 'N', '>'),
-                    new Chars('N', 'N', '^'),
-            }, "m 9,0 -6,3 v 6 l 6,3"));      // '('
-            add(new Model(new Chars[]{
-                    new Chars('c', '4', '('),
-                    new Chars('u', '0', 'N'),
-                    new Chars('N', 'N', '>'),
-                    new Chars('N', 'N', '^'),
-            }, "m 9,0 -6,0 v 12 l 6,0"));      // '('
-            // )
-            add(new Model(new Chars[]{
-                    new Chars('t', '7', ')'),
-                    new Chars('a', '1', '^'),
-                    new Chars('N', 'N', '<'),
-                    new Chars('v', '0', 'N'),
-            }, "m 3,0 6,3 v 6 l -6,3"));      // ')'
-            add(new Model(new Chars[]{
-                    new Chars('t', '7', ')'),
-                    new Chars('a', '1', '^'),
-                    new Chars('N', 'N', '<'),
-                    new Chars('v', '0', 'N'),
-            }, "m 3,0 6,0 v 12 l -6,0"));      // ')'
-
-            add(new Model(new Chars[]{
-                    new Chars('c', '4', '('),
-                    new Chars('u', '0', 'N'),
-                    new Chars('N', 'N', '>'),
-                    new Chars('N', 'N', '^'),
-            }, "m 12,0 h -8 l -4,4 v 4 l 4,4 h 8"));      // '('
-            add(new Model(new Chars[]{
-                    new Chars('t', '7', ')'),
-                    new Chars('a', '1', '^'),
-                    new Chars('N', 'N', '<'),
-                    new Chars('v', '0', 'N'),
-            }, "m 0,0 h 8 l 4,4 v 4 l -4,4 h -8"));      // ')'
-            // '{','}'
-            add(new Model(new Chars[]{
-                    new Chars('e', '9', '{'),
-                    new Chars('w', 'N', 'N'),
-                    new Chars('N', 'N', ']'),
-                    null,
-            }, "m 12,0 -12,3 12,3 -12,3 12,3"));   // '{'
-            add(new Model(new Chars[]{
-                    new Chars('e', '9', '{'),
-                    new Chars('w', 'N', 'N'),
-                    new Chars('N', 'N', ']'),
-                    null,
-            }, "m 10,0 -8,3 8,3 -8,3 8,3"));   // '{'
-
-            add(new Model(new Chars[]{
-                    new Chars('b', '3', '}'),
-                    new Chars('m', 'N', 'N'),
-                    new Chars('N', 'N', '['),
-                    null,
-            }, "m 0,0 12,3 -12,3 12,3 -12,3")); // '}'
-            add(new Model(new Chars[]{
-                    new Chars('b', '3', '}'),
-                    new Chars('m', 'N', 'N'),
-                    new Chars('N', 'N', '['),
-                    null,
-            }, "m 2,0 8,3 -8,3 8,3 -8,3")); // '}'
-            // 'k'
-            add(new Model(new Chars[]{
-                    new Chars('k', 'N', '+'),
-                    new Chars('y', '8', '&'),
-                    null,
-                    null,
-            }, "m 12,0 -9,9 -3,-3 3,-3 9,9"));   // 'k'
-            // 'x'
-            add(new Model(new Chars[]{
-                    new Chars('x', '6', '*'),
-                    null,
-                    null,
-                    null,
-            }, "m 0,0 9,9 3,-3 -3,-3 -9,9"));   // 'x'
-            // Z型
-            add(new Model(new Chars[]{
-                    new Chars('z', '2', '='),
-                    new Chars('n', 'N', '"'),
-                    null,
-                    new Chars('N', 'N', '~'),
-            }, "m 0,0 h 12 l -12,12 12,0"));   // 'z'
-            add(new Model(new Chars[]{
-                    new Chars('h', '9', '#'),
-                    null,
-                    new Chars('N', 'N', '~'),
-                    new Chars('s', '5', '$'),
-            }, "m 0,0 v 12 l 12,-12 v 12"));   // '#'
-            // '2','5'
-            add(new Model(new Chars[]{
-                    new Chars('z', '2', '='),
-                    new Chars('n', 'N', '"'),
-                    null,
-                    new Chars('N', 'N', '~'),
-            }, "m 2,0 h 8 v 6 h -8 v 6 h 8"));   // '2'
-            add(new Model(new Chars[]{
-                    new Chars('s', '5', '$'),
-                    new Chars('h', '9', '#'),
-                    null,
-                    new Chars('N', 'N', '~'),
-            }, "m 10,0 h -8 v 6 h 8 l 0,6 h -8"));   // '5'
-            // 左回り o 0 @
-            add(new Model(new Chars[]{
-                    new Chars('o', '0', '@'),
-                    null,
-                    null,
-                    null,
-            }, "m 6,0 -4,2 -2,4 2,4 4,2 4,-2 2,-4 -2,-4 -4,-2"));      // 上から左回り
-            add(new Model(new Chars[]{
-                    new Chars('o', '0', '@'),
-                    null,
-                    null,
-                    null,
-            }, "m 2,2 -2,4 2,4 4,2 4,-2 2,-4 -2,-4 -4,-2 -4,2"));      // 左上から左回り
-            add(new Model(new Chars[]{
-                    new Chars('o', '0', '@'),
-                    null,
-                    null,
-                    null,
-            }, "m 10,2 -4,-2 -4,2 -2,4 2,4 4,2 4,-2 2,-4 -2,-4"));      // 右上から左回り
-            // 右回り o 0 @
-            add(new Model(new Chars[]{
-                    new Chars('o', '0', '@'),
-                    null,
-                    null,
-                    null,
-            }, "m 6,0 4,2 2,4 -2,4 -4,2 -4,-2 -2,-4 2,-4 4,-2"));      // 上から右回り
-            add(new Model(new Chars[]{
-                    new Chars('o', '0', '@'),
-                    null,
-                    null,
-                    null,
-            }, "m 10,2 2,4 -2,4 -4,2 -4,-2 -2,-4 2,-4 4,-2 4,2"));      // 右上から右回り
-            add(new Model(new Chars[]{
-                    new Chars('o', '0', '@'),
-                    null,
-                    null,
-                    null,
-            }, "m 2,2 4,-2 4,2 2,4 -2,4 -4,2 -4,-2 -2,-4 2,-4"));      // 左上から右回り
-            // 'b'
-            add(new Model(new Chars[]{
-                    new Chars('b', 'N', 'N'),
-                    null, null, null
-            }, "m 362,120 v 12 -12 h 8 v 3 l -8,3 8,3 v 3 h -8")); // 左上
-            add(new Model(new Chars[]{
-                    new Chars('b', 'N', 'N'),
-                    null, null, null
-            }, "m 2,12 v -12 l 8,0 0,3 -8,3 8,3 0,3 -8,0")); // 左下
-            // 'd'
-            add(new Model(new Chars[]{
-                    new Chars('d', 'N', 'N'),
-                    null, null, null
-            }, "m 2,0 v 12 -12 l 8,4 v 4 l -8,4")); // 左上
-            add(new Model(new Chars[]{
-                    new Chars('d', 'N', 'N'),
-                    null, null, null
-            }, "m 2,12 v -12 l 8,4 v 4 l -8,4")); // 左下
-            // 'p'
-            add(new Model(new Chars[]{
-                    new Chars('p', 'N', 'N'),
-                    null, null, null
-            }, "m 2,0 v 12 -12 l 8,0 0,4 h -8")); // 左上
-            add(new Model(new Chars[]{
-                    new Chars('p', 'N', 'N'),
-                    null, null, null
-            }, "m 2,12 v -12 l 8,0 v 4 h -8")); // 左下
-            // 'r'
-            add(new Model(new Chars[]{
-                    new Chars('r', 'N', 'N'),
-                    null, null, null
-            }, "m 2,0 v 12 -12 l 8,0 v 4 h -8 l 8,8")); // 左上
-            add(new Model(new Chars[]{
-                    new Chars('r', 'N', 'N'),
-                    null, null, null
-            }, "m 2,12 v -12 h 8 v 4 h -8 l 8,8")); // 左下
-            // 縦棒で始まる'5'
-            add(new Model(new Chars[]{
-                    new Chars('s', '5', '$'),
-                    null, null, null
-            }, "m 2,0 v 8 h 8 v 4 h -8"));
-            // 数字の'6'
-            add(new Model(new Chars[]{
-                    new Chars('g', '6', 'N'),
-                    null, null, null
-            }, "m 8,0 -4,0 -2,8 v 4 h 8 v -4 h -8"));
-            // '8'
-            add(new Model(new Chars[]{
-                    new Chars('y', '8', '&'),
-                    null, null, null
-            }, "m 6,0 -4,3 8,6 -4,3 -4,-3 8,-6 -4,-3")); // 上から左の'8'
-            add(new Model(new Chars[]{
-                    new Chars('y', '8', '&'),
-                    null, null, null
-            }, "m 6,0 4,3 -8,6 4,3 4,-3 -8,-6 4,-3")); // 上から右の'8'
-            add(new Model(new Chars[]{
-                    new Chars('y', '8', '&'),
-                    null, null, null
-            }, "m 10,3 -4,-3 -4,3 8,6 -4,3 -4,-3 8,-6")); // 右上からの'8'
-            add(new Model(new Chars[]{
-                    new Chars('y', '8', '&'),
-                    null, null, null
-            }, "m 2,3 4,-3 4,3 -8,6 4,3 4,-3 -8,-6")); // 左上からの'8'
-            // '9'
-            add(new Model(new Chars[]{
-                    new Chars('s', '9', 'N'),
-                    null, null, null
-            }, "m 0,1 -8,-1 0,5 8,-3 -3,10")); // 数字の'9'
-            // 'G'
-            add(new Model(new Chars[]{
-                    new Chars('g', '6', 'N'),
-                    null, null, null
-            }, "m 8,0 -4,0 -2,8 v 4 h 8 v -4 h -8 8")); // 大文字の'G'
-            // 小文字の'h'
-            add(new Model(new Chars[]{
-                    new Chars('h', '9', '#'),
-                    null, null, null
-            }, "m 3,0 v 12 l 0,-4 h 6 l 0,4"));
-            // 左上から始まる'm'
-            add(new Model(new Chars[]{
-                    new Chars('m', 'N', 'N'),
-                    null, null, null
-            }, "m 360,40 v 12 l 3,-12 3,12 3,-12 3,12"));
-            // 'q'
-            add(new Model(new Chars[]{
-                    new Chars('q', 'N', 'N'),
-                    null,
-                    null,
-                    new Chars('N', '9', 'N'),
-            }, "m 4,0 -4,4 v 8 l 6,0 0,-8 -2,-4 h 8")); // 'q'
-            // 'v'
-            add(new Model(new Chars[]{
-                    new Chars('v', 'N', 'N'),
-                    null,
-                    null,
-                    new Chars('N', '9', 'N'),
-            }, "m 0,0 2,12 2,-12 8,0")); // 左上から始まる'V'
-            // 小文字の'y'
-            add(new Model(new Chars[]{
-                    new Chars('y', '8', '&'),
-                    null, null, null
-            }, "m 2,0 0,5 6,-5 0,12 h -6 l 8,-8"));
-            // '%'
-            add(new Model(new Chars[]{
-                    new Chars('N', 'N', '%'),
-                    null, null, null
-            }, "m 0,0 5,8 -2,4 -2,-4 4,-6 h 2 l 4,6 -2,4 -2,-4 5,-8"));
-            // '?'
-            add(new Model(new Chars[]{
-                    new Chars('t', '7', '?'),
-                    new Chars('f', 'N', 'N'),
-                    null,
-                    new Chars('j', 'N', ','),
-            }, "m 2,3 4,-3 4,3 -6,9"));      // '?'
+    static {
+        for (int i = 0; i < POINTS; i++) {
+            FULL_INDEX[i] = i * 2;
+        }
+        for (int i = 0; i < COARSE_POINTS; i++) {
+            COARSE_INDEX[i] = Math.round(i * (POINTS - 1) / (float) (COARSE_POINTS - 1)) * 2;
         }
-    };
-    public PointF[] points;
-    public RectF bounds;
-
-    public Stroke(Path path) {
-        points = new PointF[96];
-        RectF rect = new RectF();
-
-        path.computeBounds(rect, true);
-        float xOrigin = rect.centerX();
-        float yOrigin = rect.centerY();
-        PathMeasure pm = new PathMeasure(path, false);
-        float pl = pm.getLength();
-        float[] pos = new float[2];
-        double dMax = -Double.MAX_VALUE;
-        for (int i = 0; i < points.length; i++) {
-            float distance = (pl * i) / (float) (points.length - 1);
-            pm.getPosTan(distance, pos, null);
-            float x = pos[0] - xOrigin;
-            float y = pos[1] - yOrigin;
-            points[i] = new PointF(x, y);
-            dMax = Math.max(dMax, Math.sqrt(x * x + y * y));
+    }
+
+    // 使用中の手本(読み込むまではSVGの手本)
+    private static volatile List<Model> models;
+
+    /**
+     * SVGで書いた組み込みの手本を作る(assets/stroke_templates.binはこれをwriteModelsで書き出したもの)
+     */
+    public static ArrayList<Model> createModels() {
+        return new ArrayList<Model>() {
+            {
+                // 縦横
+                add(new Model(new Chars[]{
+                        new Chars('i', '1', '\''),
+                        new Chars(' ', ' ', '-'),
+                        new Chars('C', 'N', '!'),
+                        new Chars('B', 'B', 'B'),
+                }, "m 6,0 v 12"));   // '1'
+                // 斜め
+                add(new Model(new Chars[]{
+                        new Chars('E', 'E', ','),
+                        new Chars('S', 'S', '\\'),
+                        new Chars('M', 'M', '/'),
+                        null,
+                }, "m 12,0 -12,12"));   // ','
+                // 縦横往復
+                add(new Model(new Chars[]{
+                        new Chars('D', 'D', ':'),
+                        new Chars('R', 'R', '_'),
+                        new Chars('U', 'U', '|'),
+                        new Chars('L', 'L', 'N'),
+                }, "m 6,0 v 12 -12"));      // ':'
+                // 斜め往復
+                add(new Model(new Chars[]{
+                        new Chars('N', '8', ';'),
+                        null,
+                        new Chars('P', 'P', 'P'),
+                        null,
+                }, "m 12,0 -12,12 12,-12"));      // ';'
+                // L型
+                add(new Model(new Chars[]{
+                        new Chars('l', '4', '('),
+                        null,
+                        null,
+                        new Chars('f', 'N', 'N'),
+                }, "m 0,0 v 12 h 12"));      // 'l'
+                add(new Model(new Chars[]{
+                        new Chars('t', '7', '?'),
+                        new Chars('f', 'N', 'N'),
+                        null,
+                        new Chars('j', 'N', ','),
+                }, "m 0,0 h 12 v 12"));      // 't'
+                // <>
+                add(new Model(new Chars[]{
+                        new Chars('N', 'N', '<'),
+                        new Chars('v', '0', 'N'),
+                        new Chars('t', '7', ')'),
+                        new Chars('a', '1', '^'),
+                }, "m 12,12 -12,-6 12,-6"));            // '<'
+                add(new Model(new Chars[]{
+                        new Chars('N', 'N', '>'),
+                        new Chars('N', 'N', '^'),
+                        new Chars('c', '4', '('),
+                        new Chars('u', '0', 'N'),
+                }, "m 0,12 12,-6 -12,-6"));            // '>'
+                // (
+                add(new Model(new Chars[]{
+                        new Chars('c', '4', '('),
+                        new Chars('u', '0', 'N'),
+                        new Chars('N', 'N', '>'),
+                        new Chars('N', 'N', '^'),
+                }, "m 9,0 -6,3 v 6 l 6,3"));      // '('
+                add(new Model(new Chars[]{
+                        new Chars('c', '4', '('),
+                        new Chars('u', '0', 'N'),
+                        new Chars('N', 'N', '>'),
+                        new Chars('N', 'N', '^'),
+                }, "m 9,0 -6,0 v 12 l 6,0"));      // '('
+                // )
+                add(new Model(new Chars[]{
+                        new Chars('t', '7', ')'),
+                        new Chars('a', '1', '^'),
+                        new Chars('N', 'N', '<'),
+                        new Chars('v', '0', 'N'),
+                }, "m 3,0 6,3 v 6 l -6,3"));      // ')'
+                add(new Model(new Chars[]{
+                        new Chars('t', '7', ')'),
+                        new Chars('a', '1', '^'),
+                        new Chars('N', 'N', '<'),
+                        new Chars('v', '0', 'N'),
+                }, "m 3,0 6,0 v 12 l -6,0"));      // ')'
+
+                add(new Model(new Chars[]{
+                        new Chars('c', '4', '('),
+                        new Chars('u', '0', 'N'),
+                        new Chars('N', 'N', '>'),
+                        new Chars('N', 'N', '^'),
+                }, "m 12,0 h -8 l -4,4 v 4 l 4,4 h 8"));      // '('
+                add(new Model(new Chars[]{
+                        new Chars('t', '7', ')'),
+                        new Chars('a', '1', '^'),
+                        new Chars('N', 'N', '<'),
+                        new Chars('v', '0', 'N'),
+                }, "m 0,0 h 8 l 4,4 v 4 l -4,4 h -8"));      // ')'
+                // '{','}'
+                add(new Model(new Chars[]{
+                        new Chars('e', '9', '{'),
+                        new Chars('w', 'N', 'N'),
+                        new Chars('N', 'N', ']'),
+                        null,
+                }, "m 12,0 -12,3 12,3 -12,3 12,3"));   // '{'
+                add(new Model(new Chars[]{
+                        new Chars('e', '9', '{'),
+                        new Chars('w', 'N', 'N'),
+                        new Chars('N', 'N', ']'),
+                        null,
+                }, "m 10,0 -8,3 8,3 -8,3 8,3"));   // '{'
+
+                add(new Model(new Chars[]{
+                        new Chars('b', '3', '}'),
+                        new Chars('m', 'N', 'N'),
+                        new Chars('N', 'N', '['),
+                        null,
+                }, "m 0,0 12,3 -12,3 12,3 -12,3")); // '}'
+                add(new Model(new Chars[]{
+                        new Chars('b', '3', '}'),
+                        new Chars('m', 'N', 'N'),
+                        new Chars('N', 'N', '['),
+                        null,
+                }, "m 2,0 8,3 -8,3 8,3 -8,3")); // '}'
+                // 'k'
+                add(new Model(new Chars[]{
+                        new Chars('k', 'N', '+'),
+                        new Chars('y', '8', '&'),
+                        null,
+                        null,
+                }, "m 12,0 -9,9 -3,-3 3,-3 9,9"));   // 'k'
+                // 'x'
+                add(new Model(new Chars[]{
+                        new Chars('x', '6', '*'),
+                        null,
+                        null,
+                        null,
+                }, "m 0,0 9,9 3,-3 -3,-3 -9,9"));   // 'x'
+                // Z型
+                add(new Model(new Chars[]{
+                        new Chars('z', '2', '='),
+                        new Chars('n', 'N', '"'),
+                        null,
+                        new Chars('N', 'N', '~'),
+                }, "m 0,0 h 12 l -12,12 12,0"));   // 'z'
+                add(new Model(new Chars[]{
+                        new Chars('h', '9', '#'),
+                        null,
+                        new Chars('N', 'N', '~'),
+                        new Chars('s', '5', '$'),
+                }, "m 0,0 v 12 l 12,-12 v 12"));   // '#'
+                // '2','5'
+                add(new Model(new Chars[]{
+                        new Chars('z', '2', '='),
+                        new Chars('n', 'N', '"'),
+                        null,
+                        new Chars('N', 'N', '~'),
+                }, "m 2,0 h 8 v 6 h -8 v 6 h 8"));   // '2'
+                add(new Model(new Chars[]{
+                        new Chars('s', '5', '$'),
+                        new Chars('h', '9', '#'),
+                        null,
+                        new Chars('N', 'N', '~'),
+                }, "m 10,0 h -8 v 6 h 8 l 0,6 h -8"));   // '5'
+                // 左回り o 0 @
+                add(new Model(new Chars[]{
+                        new Chars('o', '0', '@'),
+                        null,
+                        null,
+                        null,
+                }, "m 6,0 -4,2 -2,4 2,4 4,2 4,-2 2,-4 -2,-4 -4,-2"));      // 上から左回り
+                add(new Model(new Chars[]{
+                        new Chars('o', '0', '@'),
+                        null,
+                        null,
+                        null,
+                }, "m 2,2 -2,4 2,4 4,2 4,-2 2,-4 -2,-4 -4,-2 -4,2"));      // 左上から左回り
+                add(new Model(new Chars[]{
+                        new Chars('o', '0', '@'),
+                        null,
+                        null,
+                        null,
+                }, "m 10,2 -4,-2 -4,2 -2,4 2,4 4,2 4,-2 2,-4 -2,-4"));      // 右上から左回り
+                // 右回り o 0 @
+                add(new Model(new Chars[]{
+                        new Chars('o', '0', '@'),
+                        null,
+                        null,
+                        null,
+                }, "m 6,0 4,2 2,4 -2,4 -4,2 -4,-2 -2,-4 2,-4 4,-2"));      // 上から右回り
+                add(new Model(new Chars[]{
+                        new Chars('o', '0', '@'),
+                        null,
+                        null,
+                        null,
+                }, "m 10,2 2,4 -2,4 -4,2 -4,-2 -2,-4 2,-4 4,-2 4,2"));      // 右上から右回り
+                add(new Model(new Chars[]{
+                        new Chars('o', '0', '@'),
+                        null,
+                        null,
+                        null,
+                }, "m 2,2 4,-2 4,2 2,4 -2,4 -4,2 -4,-2 -2,-4 2,-4"));      // 左上から右回り
+                // 'b'
+                add(new Model(new Chars[]{
+                        new Chars('b', 'N', 'N'),
+                        null, null, null
+                }, "m 362,120 v 12 -12 h 8 v 3 l -8,3 8,3 v 3 h -8")); // 左上
+                add(new Model(new Chars[]{
+                        new Chars('b', 'N', 'N'),
+                        null, null, null
+                }, "m 2,12 v -12 l 8,0 0,3 -8,3 8,3 0,3 -8,0")); // 左下
+                // 'd'
+                add(new Model(new Chars[]{
+                        new Chars('d', 'N', 'N'),
+                        null, null, null
+                }, "m 2,0 v 12 -12 l 8,4 v 4 l -8,4")); // 左上
+                add(new Model(new Chars[]{
+                        new Chars('d', 'N', 'N'),
+                        null, null, null
+                }, "m 2,12 v -12 l 8,4 v 4 l -8,4")); // 左下
+                // 'p'
+                add(new Model(new Chars[]{
+                        new Chars('p', 'N', 'N'),
+                        null, null, null
+                }, "m 2,0 v 12 -12 l 8,0 0,4 h -8")); // 左上
+                add(new Model(new Chars[]{
+                        new Chars('p', 'N', 'N'),
+                        null, null, null
+                }, "m 2,12 v -12 l 8,0 v 4 h -8")); // 左下
+                // 'r'
+                add(new Model(new Chars[]{
+                        new Chars('r', 'N', 'N'),
+                        null, null, null
+                }, "m 2,0 v 12 -12 l 8,0 v 4 h -8 l 8,8")); // 左上
+                add(new Model(new Chars[]{
+                        new Chars('r', 'N', 'N'),
+                        null, null, null
+                }, "m 2,12 v -12 h 8 v 4 h -8 l 8,8")); // 左下
+                // 縦棒で始まる'5'
+                add(new Model(new Chars[]{
+                        new Chars('s', '5', '$'),
+                        null, null, null
+                }, "m 2,0 v 8 h 8 v 4 h -8"));
+                // 数字の'6'
+                add(new Model(new Chars[]{
+                        new Chars('g', '6', 'N'),
+                        null, null, null
+                }, "m 8,0 -4,0 -2,8 v 4 h 8 v -4 h -8"));
+                // '8'
+                add(new Model(new Chars[]{
+                        new Chars('y', '8', '&'),
+                        null, null, null
+                }, "m 6,0 -4,3 8,6 -4,3 -4,-3 8,-6 -4,-3")); // 上から左の'8'
+                add(new Model(new Chars[]{
+                        new Chars('y', '8', '&'),
+                        null, null, null
+                }, "m 6,0 4,3 -8,6 4,3 4,-3 -8,-6 4,-3")); // 上から右の'8'
+                add(new Model(new Chars[]{
+                        new Chars('y', '8', '&'),
+                        null, null, null
+                }, "m 10,3 -4,-3 -4,3 8,6 -4,3 -4,-3 8,-6")); // 右上からの'8'
+                add(new Model(new Chars[]{
+                        new Chars('y', '8', '&'),
+                        null, null, null
+                }, "m 2,3 4,-3 4,3 -8,6 4,3 4,-3 -8,-6")); // 左上からの'8'
+                // '9'
+                add(new Model(new Chars[]{
+                        new Chars('s', '9', 'N'),
+                        null, null, null
+                }, "m 0,1 -8,-1 0,5 8,-3 -3,10")); // 数字の'9'
+                // 'G'
+                add(new Model(new Chars[]{
+                        new Chars('g', '6', 'N'),
+                        null, null, null
+                }, "m 8,0 -4,0 -2,8 v 4 h 8 v -4 h -8 8")); // 大文字の'G'
+                // 小文字の'h'
+                add(new Model(new Chars[]{
+                        new Chars('h', '9', '#'),
+                        null, null, null
+                }, "m 3,0 v 12 l 0,-4 h 6 l 0,4"));
+                // 左上から始まる'm'
+                add(new Model(new Chars[]{
+                        new Chars('m', 'N', 'N'),
+                        null, null, null
+                }, "m 360,40 v 12 l 3,-12 3,12 3,-12 3,12"));
+                // 'q'
+                add(new Model(new Chars[]{
+                        new Chars('q', 'N', 'N'),
+                        null,
+                        null,
+                        new Chars('N', '9', 'N'),
+                }, "m 4,0 -4,4 v 8 l 6,0 0,-8 -2,-4 h 8")); // 'q'
+                // 'v'
+                add(new Model(new Chars[]{
+                        new Chars('v', 'N', 'N'),
+                        null,
+                        null,
+                        new Chars('N', '9', 'N'),
+                }, "m 0,0 2,12 2,-12 8,0")); // 左上から始まる'V'
+                // 小文字の'y'
+                add(new Model(new Chars[]{
+                        new Chars('y', '8', '&'),
+                        null, null, null
+                }, "m 2,0 0,5 6,-5 0,12 h -6 l 8,-8"));
+                // '%'
+                add(new Model(new Chars[]{
+                        new Chars('N', 'N', '%'),
+                        null, null, null
+                }, "m 0,0 5,8 -2,4 -2,-4 4,-6 h 2 l 4,6 -2,4 -2,-4 5,-8"));
+                // '?'
+                add(new Model(new Chars[]{
+                        new Chars('t', '7', '?'),
+                        new Chars('f', 'N', 'N'),
+                        null,
+                        new Chars('j', 'N', ','),
+                }, "m 2,3 4,-3 4,3 -6,9"));      // '?'
+            }
+        };
+    }
+
+    /**
+     * @return 使用中の手本
+     */
+    public static List<Model> getModels() {
+        List<Model> list = models;
+        if (list == null) {
+            list = createModels();
+            models = list;
+        }
+        return list;
+    }
+
+    /**
+     * @param list 使う手本
+     */
+    public static void setModels(List<Model> list) {
+        models = list;
+    }
+
+    /**
+     * 手本を読み込む(writeModelsで書き出したもの)
+     *
+     * @param buffer 入力
+     * @return 手本
+     * @throws IOException 形式が違う
+     */
+    public static ArrayList<Model> readModels(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != BINARY_MAGIC || buffer.getInt() != POINTS || buffer.getInt() != COARSE_POINTS) {
+                throw new IOException("bad stroke templates");
+            }
+            int count = buffer.getInt();
+            ArrayList<Model> list = new ArrayList<>(count);
+            for (int m = 0; m < count; m++) {
+                Chars[] chars = new Chars[4];
+                for (int index = 0; index < 4; index++) {
+                    char a = buffer.getChar();
+                    char n = buffer.getChar();
+                    char p = buffer.getChar();
+                    if (a != 0) {
+                        chars[index] = new Chars(a, n, p);
+                    }
+                }
+                float[] points = new float[POINTS * 2];
+                buffer.asFloatBuffer().get(points);
+                buffer.position(buffer.position() + points.length * 4);
+                float[] coarse = new float[COARSE_POINTS * 2];
+                buffer.asFloatBuffer().get(coarse);
+                buffer.position(buffer.position() + coarse.length * 4);
+                list.add(new Model(chars, points, coarse));
+            }
+            return list;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated stroke templates");
         }
+    }
 
-        float xMin, xMax;
-        float yMin, yMax;
-        xMin = yMin = Float.MAX_VALUE;
-        xMax = yMax = -Float.MAX_VALUE;
-        float ratio = (float) (100.0f / dMax);
-        for (PointF point : points) {
-            point.x *= ratio;
-            point.y *= ratio;
-            xMin = Math.min(xMin, point.x);
-            yMin = Math.min(yMin, point.y);
-            xMax = Math.max(xMax, point.x);
-            yMax = Math.max(yMax, point.y);
+    /**
+     * 手本を書き出す
+     *
+     * @param out  出力
+     * @param list 手本
+     * @throws IOException 書き出せなかった
+     */
+    public static void writeModels(DataOutputStream out, List<Model> list) throws IOException {
+        out.writeInt(BINARY_MAGIC);
+        out.writeInt(POINTS);
+        out.writeInt(COARSE_POINTS);
+        out.writeInt(list.size());
+        for (Model model : list) {
+            for (Chars cs : model.chars) {
+                out.writeChar((cs == null) ? 0 : cs.a);
+                out.writeChar((cs == null) ? 0 : cs.n);
+                out.writeChar((cs == null) ? 0 : cs.p);
+            }
+            for (float f : model.points) {
+                out.writeFloat(f);
+            }
+            for (float f : model.coarse) {
+                out.writeFloat(f);
+            }
         }
-        bounds = new RectF(xMin, yMin, xMax, yMax);
     }
 
+    /**
+     * 入力したストロークからユーザーの手本を作る
+     *
+     * @param chars  方向ごとの文字
+     * @param buffer ストローク
+     * @return 手本
+     */
+    public static Model createModel(Chars[] chars, StrokeBuffer buffer) {
+        float[] sampled = new float[POINTS * 2];
+        resample(buffer.getPoints(), buffer.size(), sampled);
+        Model model = new Model(chars, sampled);
+        model.user = true;
+        return model;
+    }
     /*
-     * 簡易SVG→Path変換
+     * 簡易SVG→折れ線の頂点(x,yを交互に並べる)
      */
-    private static Path createPath(String svg) {
-        Path path = new Path();
+    private static float[] createVertices(String svg) {
+        float[] vertices = new float[64];
+        int count = 0;
         String[] ss = svg.split(" ");
         String state = "";
-        float dx, x1, x2, x3;
-        float dy, y1, y2, y3;
+        float x = 0;
+        float y = 0;
         String[] cs;
         for (int i = 0; i < ss.length; i++) {
             switch (ss[i]) {
@@ -412,108 +504,280 @@ public class Stroke {
                 case "c":
                 case "l":
                     state = ss[i];
-                    break;
+                    continue;
                 default:
-                    switch (state) {
-                        case "m":
-                            cs = ss[i].split(",");
-                            dx = Float.parseFloat(cs[0]);
-                            dy = Float.parseFloat(cs[1]);
-                            path.rMoveTo(dx, dy);
-                            state = "l";
-                            break;
-                        case "l":
-                            cs = ss[i].split(",");
-                            dx = Float.parseFloat(cs[0]);
-                            dy = Float.parseFloat(cs[1]);
-                            path.rLineTo(dx, dy);
-                            break;
-                        case "h":
-                            dx = Float.parseFloat(ss[i]);
-                            dy = 0;
-                            path.rLineTo(dx, dy);
-                            break;
-                        case "v":
-                            dx = 0;
-                            dy = Float.parseFloat(ss[i]);
-                            path.rLineTo(dx, dy);
-                            break;
-                        case "c":
-                            state = "c1";
-                            break;
-                        case "c1":
-                            state = "c2";
-                            break;
-                        case "c2":
-                            cs = ss[i - 2].split(",");
-                            x1 = Float.parseFloat(cs[0]);
-                            y1 = Float.parseFloat(cs[1]);
-                            cs = ss[i - 1].split(",");
-                            x2 = Float.parseFloat(cs[0]);
-                            y2 = Float.parseFloat(cs[1]);
-                            cs = ss[i].split(",");
-                            x3 = Float.parseFloat(cs[0]);
-                            y3 = Float.parseFloat(cs[1]);
-                            path.rCubicTo(x1, y1, x2, y2, x3, y3);
-                            state = "c";
-                            break;
+                    break;
+            }
+            switch (state) {
+                case "m":
+                    cs = ss[i].split(",");
+                    x += Float.parseFloat(cs[0]);
+                    y += Float.parseFloat(cs[1]);
+                    state = "l";
+                    break;
+                case "l":
+                    cs = ss[i].split(",");
+                    x += Float.parseFloat(cs[0]);
+                    y += Float.parseFloat(cs[1]);
+                    break;
+                case "h":
+                    x += Float.parseFloat(ss[i]);
+                    break;
+                case "v":
+                    y += Float.parseFloat(ss[i]);
+                    break;
+                case "c":
+                    state = "c1";
+                    continue;
+                case "c1":
+                    state = "c2";
+                    continue;
+                case "c2": {
+                    // 3次ベジェ曲線は16分割した折れ線にする
+                    cs = ss[i - 2].split(",");
+                    float x1 = x + Float.parseFloat(cs[0]);
+                    float y1 = y + Float.parseFloat(cs[1]);
+                    cs = ss[i - 1].split(",");
+                    float x2 = x + Float.parseFloat(cs[0]);
+                    float y2 = y + Float.parseFloat(cs[1]);
+                    cs = ss[i].split(",");
+                    float x3 = x + Float.parseFloat(cs[0]);
+                    float y3 = y + Float.parseFloat(cs[1]);
+                    for (int k = 1; k < 16; k++) {
+                        float t = k / 16.0f;
+                        float u = 1 - t;
+                        if (count * 2 + 2 > vertices.length) {
+                            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+                        }
+                        vertices[count * 2] = u * u * u * x + 3 * u * u * t * x1 + 3 * u * t * t * x2 + t * t * t * x3;
+                        vertices[count * 2 + 1] = u * u * u * y + 3 * u * u * t * y1 + 3 * u * t * t * y2 + t * t * t * y3;
+                        count++;
                     }
+                    x = x3;
+                    y = y3;
+                    state = "c";
                     break;
+                }
+                default:
+                    continue;
+            }
+            if (count * 2 + 2 > vertices.length) {
+                vertices = Arrays.copyOf(vertices, vertices.length * 2);
             }
+            vertices[count * 2] = x;
+            vertices[count * 2 + 1] = y;
+            count++;
         }
-        return path;
+        return Arrays.copyOf(vertices, count * 2);
     }
 
-    public static Result recognize(Path path) {
-        double bestDistance = Double.MAX_VALUE;
+    /**
+     * 折れ線を長さで等分したPOINTS個の点にする
+     *
+     * @param src   頂点(x,yを交互に並べる)
+     * @param count 頂点の数
+     * @param dst   結果(POINTS*2以上)
+     */
+    private static void resample(float[] src, int count, float[] dst) {
+        float length = 0;
+        for (int i = 1; i < count; i++) {
+            length += (float) Math.hypot(src[i * 2] - src[i * 2 - 2], src[i * 2 + 1] - src[i * 2 - 1]);
+        }
+        int seg = 1;    // 現在の線分の終点
+        float segStart = 0;
+        float segLength = (count > 1) ? (float) Math.hypot(src[2] - src[0], src[3] - src[1]) : 0;
+        for (int i = 0; i < POINTS; i++) {
+            float distance = (length * i) / (float) (POINTS - 1);
+            while (seg < count - 1 && segStart + segLength < distance) {
+                segStart += segLength;
+                seg++;
+                segLength = (float) Math.hypot(src[seg * 2] - src[seg * 2 - 2], src[seg * 2 + 1] - src[seg * 2 - 1]);
+            }
+            if (count < 2) {
+                dst[i * 2] = src[0];
+                dst[i * 2 + 1] = src[1];
+                continue;
+            }
+            float t = (segLength > 0) ? Math.min(Math.max((distance - segStart) / segLength, 0), 1) : 0;
+            float x0 = src[seg * 2 - 2];
+            float y0 = src[seg * 2 - 1];
+            dst[i * 2] = x0 + (src[seg * 2] - x0) * t;
+            dst[i * 2 + 1] = y0 + (src[seg * 2 + 1] - y0) * t;
+        }
+    }
+
+    /**
+     * 重心を原点に移し、全体の長さが1のベクトルにする
+     *
+     * @param sampled resampleした点
+     * @param indices 使う点の位置
+     * @param dst     結果(indices.length*2以上)
+     */
+    private static void vectorize(float[] sampled, int[] indices, float[] dst) {
+        float cx = 0;
+        float cy = 0;
+        for (int i : indices) {
+            cx += sampled[i];
+            cy += sampled[i + 1];
+        }
+        cx /= indices.length;
+        cy /= indices.length;
+        double sum = 0;
+        for (int k = 0; k < indices.length; k++) {
+            float x = sampled[indices[k]] - cx;
+            float y = sampled[indices[k] + 1] - cy;
+            dst[k * 2] = x;
+            dst[k * 2 + 1] = y;
+            sum += x * x + y * y;
+        }
+        float magnitude = (float) Math.sqrt(sum);
+        for (int k = 0; k < indices.length * 2; k++) {
+            dst[k] /= magnitude;
+        }
+    }
+
+    /**
+     * 入力を角度θ回転して手本と重ねた時の内積は a*cosθ + b*sinθ になる(Protractor)
+     *
+     * @param g      入力のベクトル
+     * @param t      手本のベクトル
+     * @param length 配列の長さ
+     * @param ab     結果(a, b)
+     */
+    private static void dot(float[] g, float[] t, int length, double[] ab) {
+        double a = 0;
+        double b = 0;
+        for (int i = 0; i < length; i += 2) {
+            a += t[i] * g[i] + t[i + 1] * g[i + 1];
+            b += t[i + 1] * g[i] - t[i] * g[i + 1];
+        }
+        ab[0] = a;
+        ab[1] = b;
+    }
+
+    /**
+     * @return 方向indexで内積が最大になる回転角度(90*index±MAX_ROTATE度の範囲)
+     */
+    private static double bestAngle(double[] ab, int index) {
+        double delta = Math.toDegrees(Math.atan2(ab[1], ab[0])) - 90 * index;
+        delta = ((delta % 360) + 540) % 360 - 180;
+        delta = Math.min(Math.max(delta, -MAX_ROTATE), MAX_ROTATE);
+        return 90 * index + delta;
+    }
+
+    /**
+     * @return 方向indexでの最大の余弦類似度
+     */
+    private static double similarity(double[] ab, int index) {
+        double radians = Math.toRadians(bestAngle(ab, index));
+        return ab[0] * Math.cos(radians) + ab[1] * Math.sin(radians);
+    }
+
+    /**
+     * 作業領域を毎回作って認識する
+     *
+     * @param buffer 入力されたストローク
+     * @return 認識結果
+     */
+    public static Result recognize(StrokeBuffer buffer) {
+        return recognize(buffer, new Workspace());
+    }
+
+    /**
+     * 手本ごとに、4方向それぞれで±10度の範囲の最適な回転を式で求めて余弦類似度を比べる。
+     * まず粗い点で全ての手本と比較して類似度の高いCANDIDATES個(手本と方向の組)だけを残し、
+     * 残ったものを全ての点で比較する。
+     * 書いている途中にフレームごとに呼ばれるので、作業用の配列と結果は呼び出し側のworkを使い回す。
+     *
+     * @param buffer 入力されたストローク
+     * @param work   作業領域(同じworkで次に認識すると結果は上書きされる)
+     * @return 認識結果(work.result)
+     */
+    public static Result recognize(StrokeBuffer buffer, Workspace work) {
+        List<Model> models = getModels();
+        int modelCount = models.size();
+        float[] sampled = work.sampled;
+        resample(buffer.getPoints(), buffer.size(), sampled);
+        float[] vector = work.vector;
+        vectorize(sampled, FULL_INDEX, vector);
+        float[] coarse = work.coarse;
+        vectorize(sampled, COARSE_INDEX, coarse);
+        double[] ab = work.ab;
+
+        // 粗い比較(候補は 方向*手本の数+手本 で表し、類似度の降順に並べる)
+        int[] candidates = work.candidates;
+        double[] candidateScores = work.candidateScores;
+        int candidateCount = 0;
+        for (int m = 0; m < modelCount; m++) {
+            Model model = models.get(m);
+            dot(coarse, model.coarse, COARSE_POINTS * 2, ab);
+            for (int index = 0; index < 4; index++) {
+                if (model.user && model.chars[index] == null) {
+                    continue;
+                }
+                double score = similarity(ab, index);
+                if (candidateCount == CANDIDATES && score <= candidateScores[CANDIDATES - 1]) {
+                    continue;
+                }
+                int i = (candidateCount < CANDIDATES) ? candidateCount++ : CANDIDATES - 1;
+                while (i > 0 && candidateScores[i - 1] < score) {
+                    candidateScores[i] = candidateScores[i - 1];
+                    candidates[i] = candidates[i - 1];
+                    i--;
+                }
+                candidateScores[i] = score;
+                candidates[i] = index * modelCount + m;
+            }
+        }
+
+        // 詳しい比較(同じ類似度なら方向・手本の順で先のものを選ぶ)
+        Arrays.sort(candidates, 0, candidateCount);
+        double bestScore = -Double.MAX_VALUE;
         Model bestModel = null;
-        int bestRotate = 0;
         int bestIndex = 0;
-        Stroke inputStroke = new Stroke(path);
-        Matrix matrixRotate = new Matrix();
-        for (int index = 0; index < 4; index++) {
-            for (int rotate = -10; rotate <= 10; rotate += 5) {
-                matrixRotate.reset();
-                matrixRotate.postRotate(90 * index + rotate);
-                Path testPath = new Path(path);
-                testPath.transform(matrixRotate);
-                Stroke testStroke = new Stroke(testPath);
-                for (Model model : models) {
-                    double distance = testStroke.distance(model.stroke);
-                    if (bestDistance > distance) {
-                        bestDistance = distance;
-                        bestModel = model;
-                        bestIndex = index;
-                        bestRotate = rotate;
-                    }
-                }
+        double bestRotate = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int index = candidates[c] / modelCount;
+            Model model = models.get(candidates[c] % modelCount);
+            dot(vector, model.points, POINTS * 2, ab);
+            double score = similarity(ab, index);
+            if (bestScore < score) {
+                bestScore = score;
+                bestModel = model;
+                bestIndex = index;
+                bestRotate = bestAngle(ab, index) - 90 * index;
             }
         }
         char a = 'N';
         char n = 'N';
         char p = 'N';
-        Chars cs = bestModel.chars[bestIndex];
+        Chars cs = (bestModel == null) ? null : bestModel.chars[bestIndex];
         if (cs != null) {
             a = cs.a;
             n = cs.n;
             p = cs.p;
         }
-        matrixRotate.reset();
-        matrixRotate.postRotate(-90 * bestIndex);
-        Path modelPath = new Path(bestModel.path);
-        modelPath.transform(matrixRotate);
-        Stroke modelStroke = new Stroke(modelPath);
-        return new Result(a, n, p, bestDistance, bestRotate, modelStroke, inputStroke);
+        // 距離は重ねた2つのベクトルのなす角度(ラジアン)
+        Result result = work.result;
+        result.a = a;
+        result.n = n;
+        result.p = p;
+        result.distance = Math.acos(Math.min(bestScore, 1.0));
+        result.rotate = (int) Math.round(bestRotate);
+        return result;
     }
 
-    private double distance(Stroke dest) {
-        double d = 0;
-        for (int i = 0; i < points.length; i++) {
-            float dx = dest.points[i].x - this.points[i].x;
-            float dy = dest.points[i].y - this.points[i].y;
-            d += Math.sqrt(dx * dx + dy * dy);
-        }
-        return d / points.length;
+    /**
+     * 認識に使う作業用の配列と結果(1つのスレッドで使う)
+     */
+    public static class Workspace {
+        private final float[] sampled = new float[POINTS * 2];
+        private final float[] vector = new float[POINTS * 2];
+        private final float[] coarse = new float[COARSE_POINTS * 2];
+        private final double[] ab = new double[2];
+        private final int[] candidates = new int[CANDIDATES];
+        private final double[] candidateScores = new double[CANDIDATES];
+        private final Result result = new Result('N', 'N', 'N', 0, 0);
     }
 
     public static class Result {
@@ -522,17 +786,13 @@ public class Stroke {
         public char p;
         public double distance;
         public int rotate;
-        public Stroke modelStroke;
-        public Stroke inputStroke;
 
-        public Result(char a, char n, char p, double distance, int rotate, Stroke modelStroke, Stroke inputStroke) {
+        public Result(char a, char n, char p, double distance, int rotate) {
             this.a = a;
             this.n = n;
             this.p = p;
             this.distance = distance;
             this.rotate = rotate;
-            this.modelStroke = modelStroke;
-            this.inputStroke = inputStroke;
         }
     }
 
@@ -550,13 +810,35 @@ public class Stroke {
 
     public static class Model {
         public Chars[] chars;
-        public Path path;
-        public Stroke stroke;
+        public float[] points;  // 正規化したベクトル(x,yを交互に並べる)
+        public float[] coarse;  // 粗い比較用の正規化したベクトル
+        // ユーザーの手本は文字のある方向とだけ比較する(組み込みの手本は文字の無い方向に合うと'N'にする)
+        public boolean user;
 
         public Model(Chars[] chars, String svg) {
             this.chars = chars;
-            this.path = createPath(svg);
-            this.stroke = new Stroke(path);
+            float[] vertices = createVertices(svg);
+            float[] sampled = new float[POINTS * 2];
+            resample(vertices, vertices.length / 2, sampled);
+            setPoints(sampled);
+        }
+
+        public Model(Chars[] chars, float[] points, float[] coarse) {
+            this.chars = chars;
+            this.points = points;
+            this.coarse = coarse;
+        }
+
+        private Model(Chars[] chars, float[] sampled) {
+            this.chars = chars;
+            setPoints(sampled);
+        }
+
+        private void setPoints(float[] sampled) {
+            this.points = new float[POINTS * 2];
+            vectorize(sampled, FULL_INDEX, this.points);
+            this.coarse = new float[COARSE_POINTS * 2];
+            vectorize(sampled, COARSE_INDEX, this.coarse);
         }
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import java.util.Arrays;
+
+/**
+ * ストロークの座標列
+ * <p>
+ * x,yを交互に並べたfloatの配列に追加していく。配列は使い回すので、入力中に確保は起きない。
+ * Androidに依存しないので、Strokeと合わせてJVM上でも動かせる。
+ */
+public class StrokeBuffer {
+    private float[] mPoints;
+    private int mSize;  // 点の数
+
+    public StrokeBuffer(int capacity) {
+        mPoints = new float[capacity * 2];
+    }
+
+    public void add(float x, float y) {
+        if (mSize * 2 == mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, Math.max(mPoints.length * 2, 16));
+        }
+        mPoints[mSize * 2] = x;
+        mPoints[mSize * 2 + 1] = y;
+        mSize++;
+    }
+
+    /**
+     * @return 同じ点を持つ別のバッファ(元を使い回しても変わらない)
+     */
+    public StrokeBuffer copy() {
+        StrokeBuffer buffer = new StrokeBuffer(mSize);
+        System.arraycopy(mPoints, 0, buffer.mPoints, 0, mSize * 2);
+        buffer.mSize = mSize;
+        return buffer;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public float getX(int index) {
+        return mPoints[index * 2];
+    }
+
+    public float getY(int index) {
+        return mPoints[index * 2 + 1];
+    }
+
+    /**
+     * 外接矩形を求める
+     *
+     * @param bounds 結果(left, top, right, bottom)
+     */
+    public void computeBounds(float[] bounds) {
+        float left = Float.MAX_VALUE;
+        float top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE;
+        float bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < mSize * 2; i += 2) {
+            left = Math.min(left, mPoints[i]);
+            top = Math.min(top, mPoints[i + 1]);
+            right = Math.max(right, mPoints[i]);
+            bottom = Math.max(bottom, mPoints[i + 1]);
+        }
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    /**
+     * @return x,yを交互に並べた配列(size()*2まで有効)
+     */
+    public float[] getPoints() {
+        return mPoints;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import java.util.Locale;
+
+/**
+ * 手書き入力の評価用コーパスの1行
+ * <p>
+ * 形式は「モード TAB 正解の文字 TAB x,y x,y ...」で、モードは a(英字), n(数字), p(記号)。
+ * 正解の文字はStroke.Resultのa/n/pと同じ(制御用は大文字)。#で始まる行と空行は無視する。
+ */
+public class StrokeCorpus {
+    public static final String FILE_NAME = "stroke_corpus.txt";
+
+    public final char mode;
+    public final char label;
+    public final StrokeBuffer buffer;
+
+    public StrokeCorpus(char mode, char label, StrokeBuffer buffer) {
+        this.mode = mode;
+        this.label = label;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return 認識結果のうちモードに対応する文字
+     */
+    public char select(Stroke.Result result) {
+        switch (mode) {
+            case 'n':
+                return result.n;
+            case 'p':
+                return result.p;
+            default:
+                return result.a;
+        }
+    }
+
+    /**
+     * @return 1行の文字列
+     */
+    public static String format(char mode, char label, StrokeBuffer buffer) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(mode).append('\t').append(label).append('\t');
+        for (int i = 0; i < buffer.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(String.format(Locale.ROOT, "%.1f,%.1f", buffer.getX(i), buffer.getY(i)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param line 1行
+     * @return 読み取った内容(コメント・空行・形式が違う行ならnull)
+     */
+    public static StrokeCorpus parse(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+            return null;
+        }
+        String[] fields = line.split("\t");
+        if (fields.length != 3 || fields[0].length() != 1 || fields[1].length() != 1) {
+            return null;
+        }
+        String[] points = fields[2].trim().split(" +");
+        StrokeBuffer buffer = new StrokeBuffer(points.length);
+        try {
+            for (String point : points) {
+                int comma = point.indexOf(',');
+                if (comma < 0) {
+                    return null;
+                }
+                buffer.add(Float.parseFloat(point.substring(0, comma)), Float.parseFloat(point.substring(comma + 1)));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new StrokeCorpus(fields[0].charAt(0), fields[1].charAt(0), buffer);
+    }
+}
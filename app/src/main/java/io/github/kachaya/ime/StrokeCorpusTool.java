@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * 手書き入力の評価用コーパスの読み込み・書き出し
+ * <p>
+ * 記録した正解は認識結果そのものなので、書き出して間違っているものを直してから
+ * テスト用のコーパス(src/test/resources/stroke_corpus.txt)に加える。読み込むと記録済みのものを置き換える。
+ */
+public class StrokeCorpusTool extends TextFileTool {
+
+    public String getDefaultFileName() {
+        return StrokeCorpus.FILE_NAME;
+    }
+
+    public void importEntries(ArrayList<String> entries) {
+        File file = new File(getFilesDir(), StrokeCorpus.FILE_NAME);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            for (String entry : entries) {
+                writer.write(entry + "\n");
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    public ArrayList<String> exportEntries() {
+        ArrayList<String> entries = new ArrayList<>();
+        File file = new File(getFilesDir(), StrokeCorpus.FILE_NAME);
+        if (!file.exists()) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String entry;
+            while ((entry = reader.readLine()) != null) {
+                entries.add(entry);
+            }
+        } catch (IOException ignored) {
+            entries.clear();
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Bundle;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.FrameLayout;
+import android.widget.ListView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.ArrayList;
+
+/**
+ * 手書き入力の手本の登録
+ * <p>
+ * 文字を指定して書いたストロークを、その文字の手本としてユーザーの手本に追加する。
+ * 一覧を長押しすると削除する。
+ */
+public class StrokeTemplateTool extends AppCompatActivity {
+    private EditText mAlphaText;
+    private EditText mNumberText;
+    private EditText mPunctuationText;
+    private PadView mPadView;
+    private ArrayAdapter<String> mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.stroke_template_tool);
+
+        mAlphaText = findViewById(R.id.alpha_char);
+        mNumberText = findViewById(R.id.number_char);
+        mPunctuationText = findViewById(R.id.punctuation_char);
+
+        mPadView = new PadView(this);
+        FrameLayout padContainer = findViewById(R.id.pad_container);
+        padContainer.addView(mPadView);
+
+        Button registerButton = findViewById(R.id.register_button);
+        registerButton.setOnClickListener(this::onClickRegister);
+        Button clearButton = findViewById(R.id.clear_button);
+        clearButton.setOnClickListener(v -> mPadView.clear());
+
+        ListView listView = findViewById(R.id.list_view);
+        listView.setEmptyView(findViewById(R.id.empty_text));
+        mAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<>());
+        listView.setAdapter(mAdapter);
+        listView.setOnItemLongClickListener((parent, view, position, id) -> {
+            StrokeTemplates.removeUserModel(this, position);
+            updateList();
+            return true;
+        });
+
+        StrokeTemplates.load(this);
+        updateList();
+    }
+
+    private void onClickRegister(View v) {
+        char a = getChar(mAlphaText);
+        char n = getChar(mNumberText);
+        char p = getChar(mPunctuationText);
+        if (a == 'N' && n == 'N' && p == 'N') {
+            Toast.makeText(this, "文字を指定してください", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        StrokeBuffer buffer = mPadView.getBuffer();
+        float[] bounds = new float[4];
+        buffer.computeBounds(bounds);
+        if (buffer.size() < 2 || !(bounds[2] - bounds[0] > 1 || bounds[3] - bounds[1] > 1)) {
+            Toast.makeText(this, "ストロークを書いてください", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // 書いた向きのまま(方向0)の手本にする
+        Stroke.Chars[] chars = new Stroke.Chars[]{new Stroke.Chars(a, n, p), null, null, null};
+        if (!StrokeTemplates.addUserModel(this, Stroke.createModel(chars, buffer))) {
+            Toast.makeText(this, "手本は" + StrokeTemplates.MAX_USER_MODELS + "個までです。長押しで削除してください", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mPadView.clear();
+        updateList();
+    }
+
+    /**
+     * @return 入力された文字(空なら'N')
+     */
+    private static char getChar(EditText editText) {
+        CharSequence text = editText.getText();
+        return (text.length() > 0) ? text.charAt(0) : 'N';
+    }
+
+    private void updateList() {
+        mAdapter.clear();
+        for (Stroke.Model model : StrokeTemplates.readUserModels(this)) {
+            Stroke.Chars cs = model.chars[0];
+            mAdapter.add("英字:" + cs.a + " 数字:" + cs.n + " 記号:" + cs.p);
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * ストロークを書く場所
+     */
+    private static class PadView extends View {
+        private final StrokeBuffer mBuffer = new StrokeBuffer(256);
+        private final Path mPath = new Path();
+        private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        PadView(Context context) {
+            super(context);
+            mPaint.setColor(Color.GRAY);
+            mPaint.setStrokeJoin(Paint.Join.ROUND);
+            mPaint.setStrokeWidth(context.getResources().getDisplayMetrics().density * 3);
+            mPaint.setStyle(Paint.Style.STROKE);
+        }
+
+        StrokeBuffer getBuffer() {
+            return mBuffer;
+        }
+
+        void clear() {
+            mBuffer.clear();
+            mPath.reset();
+            invalidate();
+        }
+
+        @SuppressLint("ClickableViewAccessibility")
+        @Override
+        public boolean onTouchEvent(@NonNull MotionEvent event) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    clear();
+                    mBuffer.add(event.getX(), event.getY());
+                    mPath.moveTo(event.getX(), event.getY());
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                case MotionEvent.ACTION_UP:
+                    for (int h = 0; h < event.getHistorySize(); h++) {
+                        mBuffer.add(event.getHistoricalX(h), event.getHistoricalY(h));
+                        mPath.lineTo(event.getHistoricalX(h), event.getHistoricalY(h));
+                    }
+                    mBuffer.add(event.getX(), event.getY());
+                    mPath.lineTo(event.getX(), event.getY());
+                    break;
+                default:
+                    return true;
+            }
+            invalidate();
+            return true;
+        }
+
+        @Override
+        protected void onDraw(@NonNull Canvas canvas) {
+            super.onDraw(canvas);
+            canvas.drawPath(mPath, mPaint);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.kachaya.ime;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 手書き入力の手本の読み込み
+ * <p>
+ * 組み込みの手本は正規化済みの点をバイナリにしたアセットを一度に読み込む。
+ * ユーザーが登録した手本は別のファイルに追加していき、組み込みの手本の後ろに並べて使う。
+ * 粗い比較は全ての手本と行うので、1回の認識の手間は手本の数に比例して増える(詳しい比較は絞り込んだ分だけ)。
+ * ユーザーの手本は登録した向きとだけ比較し、MAX_USER_MODELS個までにする。
+ */
+public class StrokeTemplates {
+    private static final String TAG = "StrokeTemplates";
+    public static final String ASSET_FILE_NAME = "stroke_templates.bin";
+    public static final String USER_FILE_NAME = "stroke_user.bin";
+    // ユーザーの手本の上限(組み込みの手本の4方向分と比べて粗い比較が3割ほど増えるまで)
+    public static final int MAX_USER_MODELS = 64;
+
+    private static List<Stroke.Model> sBuiltinModels;
+
+    /**
+     * 組み込みとユーザーの手本を読み込んでStrokeに設定する(読み込み済みなら何もしない)
+     *
+     * @param context コンテキスト
+     */
+    public static synchronized void load(Context context) {
+        if (sBuiltinModels != null) {
+            return;
+        }
+        long startTime = SystemClock.uptimeMillis();
+        try (InputStream is = context.getAssets().open(ASSET_FILE_NAME)) {
+            sBuiltinModels = Stroke.readModels(ByteBuffer.wrap(readAll(is)));
+            Log.d(TAG, "loaded " + sBuiltinModels.size() + " templates in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+        } catch (IOException e) {
+            sBuiltinModels = Stroke.createModels();
+            Log.d(TAG, "created " + sBuiltinModels.size() + " templates in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+        }
+        update(context);
+    }
+
+    /**
+     * @param context コンテキスト
+     * @return ユーザーが登録した手本
+     */
+    public static synchronized ArrayList<Stroke.Model> readUserModels(Context context) {
+        File file = new File(context.getFilesDir(), USER_FILE_NAME);
+        if (file.exists()) {
+            try (InputStream is = new FileInputStream(file)) {
+                ArrayList<Stroke.Model> list = Stroke.readModels(ByteBuffer.wrap(readAll(is)));
+                for (Stroke.Model model : list) {
+                    model.user = true;
+                }
+                return list;
+            } catch (IOException ignored) {
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * 手本を登録する
+     *
+     * @param context コンテキスト
+     * @param model   手本
+     * @return 登録できた(MAX_USER_MODELS個に達していればfalse)
+     */
+    public static synchronized boolean addUserModel(Context context, Stroke.Model model) {
+        ArrayList<Stroke.Model> list = readUserModels(context);
+        if (list.size() >= MAX_USER_MODELS) {
+            return false;
+        }
+        list.add(model);
+        writeUserModels(context, list);
+        return true;
+    }
+
+    /**
+     * 登録した手本を消す
+     *
+     * @param context コンテキスト
+     * @param index   位置
+     */
+    public static synchronized void removeUserModel(Context context, int index) {
+        ArrayList<Stroke.Model> list = readUserModels(context);
+        if (index >= 0 && index < list.size()) {
+            list.remove(index);
+            writeUserModels(context, list);
+        }
+    }
+
+    private static void writeUserModels(Context context, List<Stroke.Model> list) {
+        File file = new File(context.getFilesDir(), USER_FILE_NAME);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            Stroke.writeModels(out, list);
+        } catch (IOException ignored) {
+            file.delete();
+        }
+        if (sBuiltinModels != null) {
+            update(context);
+        }
+    }
+
+    private static void update(Context context) {
+        ArrayList<Stroke.Model> list = new ArrayList<>(sBuiltinModels);
+        list.addAll(readUserModels(context));
+        Stroke.setModels(list);
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(Math.max(is.available(), 4096));
+        byte[] buf = new byte[8192];
+        int len;
+        while ((len = is.read(buf)) > 0) {
+            os.write(buf, 0, len);
+        }
+        return os.toByteArray();
+    }
+}
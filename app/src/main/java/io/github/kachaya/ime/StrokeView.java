@@ -18,32 +18,81 @@ package io.github.kachaya.ime;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.content.SharedPreferences;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.RectF;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.MotionEvent;
-import android.view.ViewGroup;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.PreferenceManager;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 手書き(ストローク)入力
+ * <p>
+ * 枠・ラベル・シフト表示は背景のRenderNodeに記録しておき、状態が変わった時だけ記録し直す。
+ * 軌跡は一定の線分数ごとのRenderNodeに分けて記録し、移動時は描き足し中の最後のまとまりだけを
+ * 記録し直すので、1回の移動の描画量はストロークの長さによらない。
+ * <p>
+ * タッチイベントでは履歴も含めた座標をStrokeBufferに溜めるだけにして、
+ * 軌跡への追加は表示フレームごとにまとめて行う。
+ * <p>
+ * 書いている間もフレームごとに点が増えていれば認識し直して、結果の文字を薄く表示しておく。
+ * 指を離した時は、その後に増えた点が無ければ最後の認識結果をそのまま使う。
+ */
 public class StrokeView extends KeyboardLayout {
-    private final Path mStrokePath;
+    private static final String TAG = "StrokeView";
+    // 軌跡のRenderNode1つあたりの線分数
+    private static final int TRAIL_CHUNK_SEGMENTS = 64;
+
+    private final StrokeBuffer mStrokeBuffer = new StrokeBuffer(256);
+    private int mConsumedPoints;    // 軌跡に追加済みの点の数
+    private final float[] mStrokeBounds = new float[4];
+    private final Path mStrokePath;     // ストローク全体(ソフトウェア描画用)
     private final Paint mStrokePaint;
     private final Paint mFramePaint;
 
+    private final RenderNode mBackgroundNode = new RenderNode("StrokeBackground");
+    private boolean mBackgroundDirty = true;
+
+    private final ArrayList<RenderNode> mTrailNodes = new ArrayList<>();
+    private int mTrailNodeCount;    // 使用中の数(最後が描き足し中)
+    private final Path mTrailPath = new Path();     // 描き足し中のまとまりの軌跡
+    private int mTrailSegments;
+    private boolean mTrailDirty;
+    private float mLastX;
+    private float mLastY;
+
+    private final Paint mPreviewPaint;
+    private final Stroke.Workspace mWorkspace = new Stroke.Workspace();  // 認識の作業領域
+    private Stroke.Result mHypothesis;  // 書いている途中の認識結果(mWorkspaceの中)
+    private int mHypothesisPoints;      // mHypothesisを求めた時の点の数
+
     private boolean mPunctuationFlag;
+    private boolean mCorpusCapture;     // 評価用にストロークを記録する
+    // 記録の書き込み(順番を保つので1本のスレッド、最初に記録するまでスレッドは作られない)
+    private static final ExecutorService sCaptureExecutor = Executors.newSingleThreadExecutor();
 
     public StrokeView(Context context, AttributeSet attrs) {
         super(context, attrs);
         setOrientation(VERTICAL);
-
-        mImageView = new ImageView(context);
-        mImageView.setImageBitmap(mBitmap);
-        addView(mImageView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1.0f));
+        StrokeTemplates.load(context);
+        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
+        mCorpusCapture = sharedPreferences.getBoolean("stroke_corpus_capture", false);
 
         mPunctuationFlag = false;
 
@@ -59,40 +108,251 @@ public class StrokeView extends KeyboardLayout {
         mFramePaint.setStrokeJoin(Paint.Join.ROUND);
         mFramePaint.setStrokeWidth(mDensity * 2);
         mFramePaint.setStyle(Paint.Style.STROKE);
+
+        mPreviewPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mPreviewPaint.setColor(mKeyForegroundColor);
+        mPreviewPaint.setAlpha(0x60);
+        mPreviewPaint.setTextAlign(Paint.Align.CENTER);
     }
 
     @SuppressLint("ClickableViewAccessibility")
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
+    public boolean onTouchEvent(@NonNull MotionEvent event) {
         float x = event.getX();
         float y = event.getY();
-        switch (event.getAction()) {
+        switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
+                mStrokeBuffer.clear();
+                mStrokeBuffer.add(x, y);
+                mConsumedPoints = 1;
+                mHypothesis = null;
+                mHypothesisPoints = 0;
                 mStrokePath.reset();
                 mStrokePath.moveTo(x, y);
+                startTrail(x, y);
                 break;
             case MotionEvent.ACTION_MOVE:
-                mStrokePath.lineTo(x, y);
+                // 前回のイベントからまとめられた座標も取り込む
+                for (int h = 0; h < event.getHistorySize(); h++) {
+                    mStrokeBuffer.add(event.getHistoricalX(h), event.getHistoricalY(h));
+                }
+                mStrokeBuffer.add(x, y);
                 break;
-            case MotionEvent.ACTION_UP:
-                mStrokePath.lineTo(x, y);
+            case MotionEvent.ACTION_UP: {
+                // 最後のMOVEと同じ位置なら追加しない(途中の認識結果をそのまま使えるように)
+                int last = mStrokeBuffer.size() - 1;
+                if (last < 0 || mStrokeBuffer.getX(last) != x || mStrokeBuffer.getY(last) != y) {
+                    mStrokeBuffer.add(x, y);
+                }
+                consumePoints();
                 processStroke();
+                mStrokeBuffer.clear();
                 mStrokePath.reset();
+                clearTrail();
+                mHypothesis = null;
+                mBackgroundDirty = true;    // シフト等の表示が変わるかもしれない
                 break;
-            default:
+            }
+            case MotionEvent.ACTION_CANCEL:
+                mHypothesis = null;
+                mStrokeBuffer.clear();
+                mStrokePath.reset();
+                clearTrail();
                 break;
+            default:
+                return true;
         }
-        drawKeyboard();
-        invalidate();
+        postInvalidateOnAnimation();    // 次の表示フレームでまとめて描く
         return true;
     }
 
+    /**
+     * 溜まった座標をストロークと軌跡に追加する
+     */
+    private void consumePoints() {
+        int size = mStrokeBuffer.size();
+        for (int i = mConsumedPoints; i < size; i++) {
+            float x = mStrokeBuffer.getX(i);
+            float y = mStrokeBuffer.getY(i);
+            mStrokePath.lineTo(x, y);
+            appendTrail(x, y);
+        }
+        mConsumedPoints = size;
+    }
+
+    private void startTrail(float x, float y) {
+        mTrailNodeCount = 0;
+        nextTrailNode();
+        mTrailPath.reset();
+        mTrailPath.moveTo(x, y);
+        mTrailSegments = 0;
+        mLastX = x;
+        mLastY = y;
+        mTrailDirty = true;
+    }
+
+    private void appendTrail(float x, float y) {
+        if (mTrailNodeCount == 0) {
+            return;
+        }
+        if (mTrailSegments == TRAIL_CHUNK_SEGMENTS) {
+            // 一杯になったまとまりを確定して次へ
+            if (mTrailDirty) {
+                recordTrail();
+            }
+            nextTrailNode();
+            mTrailPath.reset();
+            mTrailPath.moveTo(mLastX, mLastY);
+            mTrailSegments = 0;
+        }
+        mTrailPath.lineTo(x, y);
+        mTrailSegments++;
+        mLastX = x;
+        mLastY = y;
+        mTrailDirty = true;
+    }
+
+    private void clearTrail() {
+        mTrailNodeCount = 0;
+        mTrailPath.reset();
+        mTrailDirty = false;
+    }
+
+    private void nextTrailNode() {
+        if (mTrailNodeCount == mTrailNodes.size()) {
+            RenderNode node = new RenderNode("StrokeTrail" + mTrailNodeCount);
+            node.setPosition(0, 0, mWidth, mHeight);
+            mTrailNodes.add(node);
+        }
+        mTrailNodeCount++;
+    }
+
+    /**
+     * 描き足し中のまとまりを記録し直す
+     */
+    private void recordTrail() {
+        RenderNode node = mTrailNodes.get(mTrailNodeCount - 1);
+        RecordingCanvas canvas = node.beginRecording();
+        canvas.drawPath(mTrailPath, mStrokePaint);
+        node.endRecording();
+        mTrailDirty = false;
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        consumePoints();
+        updateHypothesis();
+        if (!canvas.isHardwareAccelerated()) {
+            drawBackground(canvas);
+            drawPreview(canvas);
+            canvas.drawPath(mStrokePath, mStrokePaint);
+            return;
+        }
+        if (mBackgroundDirty || !mBackgroundNode.hasDisplayList()) {
+            RecordingCanvas recordingCanvas = mBackgroundNode.beginRecording();
+            drawBackground(recordingCanvas);
+            mBackgroundNode.endRecording();
+            mBackgroundDirty = false;
+        }
+        canvas.drawRenderNode(mBackgroundNode);
+        drawPreview(canvas);
+        if (mTrailDirty) {
+            recordTrail();
+        }
+        for (int i = 0; i < mTrailNodeCount; i++) {
+            canvas.drawRenderNode(mTrailNodes.get(i));
+        }
+    }
+
+    /**
+     * 前回から点が増えていれば認識し直す
+     */
+    private void updateHypothesis() {
+        int size = mStrokeBuffer.size();
+        if (size == mHypothesisPoints) {
+            return;
+        }
+        mHypothesisPoints = size;
+        mStrokeBuffer.computeBounds(mStrokeBounds);
+        if (isTap()) {
+            mHypothesis = null;
+            return;
+        }
+        mHypothesis = Stroke.recognize(mStrokeBuffer, mWorkspace);
+    }
+
+    private boolean isTap() {
+        float width = mStrokeBounds[2] - mStrokeBounds[0];
+        float height = mStrokeBounds[3] - mStrokeBounds[1];
+        return !(width > 1) || !(height > 1);
+    }
+
+    private boolean isRightSide() {
+        return (mStrokeBounds[0] + mStrokeBounds[2]) / 2.0f > (mWidth / 2.0f);
+    }
+
+    /**
+     * 書いている途中の認識結果の文字を、書いている側の中央に薄く表示する
+     */
+    private void drawPreview(Canvas canvas) {
+        if (mHypothesis == null) {
+            return;
+        }
+        boolean right = isRightSide();
+        char ch;
+        if (mPunctuationFlag) {
+            ch = mHypothesis.p;
+        } else if (right) {
+            ch = mHypothesis.n;
+        } else {
+            ch = mHypothesis.a;
+        }
+        if (Character.isUpperCase(ch)) {
+            ch = getFunctionSymbol(ch);
+            if (ch == 0) {
+                return;
+            }
+        } else if (ch == ' ') {
+            ch = '⎵';
+        } else if (!mPunctuationFlag && !right && (mShiftSingleFlag || mShiftLockFlag)) {
+            ch = Character.toUpperCase(ch);
+        }
+        mPreviewPaint.setTextSize(mHeight * 0.4f);
+        float x = right ? mWidth * 0.75f : mWidth * 0.25f;
+        float y = mHeight / 2.0f - (mPreviewPaint.descent() + mPreviewPaint.ascent()) / 2;
+        canvas.drawText(Character.toString(ch), x, y, mPreviewPaint);
+    }
+
+    /**
+     * @return 制御用の文字を表す記号(表示しないものは0)
+     */
+    private static char getFunctionSymbol(char ch) {
+        switch (ch) {
+            case 'B':   // backspace
+                return '⌫';
+            case 'C':   // caps
+                return '⇧';
+            case 'D':   // down
+                return '▾';
+            case 'E':   // enter
+                return '⏎';
+            case 'L':   // left
+                return '◂';
+            case 'R':   // right
+                return '▸';
+            case 'U':   // up
+                return '▴';
+            default:
+                return 0;
+        }
+    }
+
     private void processStroke() {
         char ch;
-        RectF bounds = new RectF();
-        mStrokePath.computeBounds(bounds, true);
+        updateHypothesis();     // 最後のフレームより後に点が増えていれば認識し直す
+        mStrokeBuffer.computeBounds(mStrokeBounds);
 
-        boolean isTap = !(bounds.width() > 1) || !(bounds.height() > 1);
+        boolean isTap = isTap();
 
         if (isTap) {
             if (mPunctuationFlag) {
@@ -104,7 +364,11 @@ public class StrokeView extends KeyboardLayout {
             return;
         }
 
-        Stroke.Result result = Stroke.recognize(mStrokePath);
+        Stroke.Result result = mHypothesis;
+        if (mCorpusCapture) {
+            char mode = mPunctuationFlag ? 'p' : isRightSide() ? 'n' : 'a';
+            captureStroke(mode, (mode == 'p') ? result.p : (mode == 'n') ? result.n : result.a);
+        }
 
         if (mPunctuationFlag) {
             mPunctuationFlag = false;
@@ -117,7 +381,7 @@ public class StrokeView extends KeyboardLayout {
             return;
         }
 
-        if (bounds.centerX() > (mWidth / 2.0f)) {
+        if (isRightSide()) {
             // 中心より右側
             ch = result.n;
             if (Character.isUpperCase(ch)) {
@@ -158,22 +422,24 @@ public class StrokeView extends KeyboardLayout {
         }
     }
 
-    private void drawKeyboard() {
-
-        mCanvas.drawColor(mBackgroundColor);
+    /**
+     * 枠・ラベル・シフト表示を描く
+     */
+    private void drawBackground(Canvas canvas) {
+        canvas.drawColor(mBackgroundColor);
 
         float r = mDensity * 10.0f;
         mFramePaint.setStyle(Paint.Style.STROKE);
-        mCanvas.drawRoundRect(mDensity, mDensity, mWidth - mDensity, mHeight - mDensity, r, r, mFramePaint);
-        mCanvas.drawLine(mWidth / 2.0f, mDensity, mWidth / 2.0f, mHeight - mDensity, mFramePaint);
+        canvas.drawRoundRect(mDensity, mDensity, mWidth - mDensity, mHeight - mDensity, r, r, mFramePaint);
+        canvas.drawLine(mWidth / 2.0f, mDensity, mWidth / 2.0f, mHeight - mDensity, mFramePaint);
 
         mFramePaint.setStyle(Paint.Style.FILL_AND_STROKE);
         mFramePaint.setTextSize(mHeight * 0.1f);
         mFramePaint.setTextAlign(Paint.Align.CENTER);
         float ofsX = mHeight * 0.07f;
         float ofsY = mHeight * 0.08f + ((mFramePaint.descent() + mFramePaint.ascent()) / 2);
-        mCanvas.drawText("a", ofsX, mHeight - ofsY, mFramePaint);
-        mCanvas.drawText("1", mWidth - ofsX, mHeight - ofsY, mFramePaint);
+        canvas.drawText("a", ofsX, mHeight - ofsY, mFramePaint);
+        canvas.drawText("1", mWidth - ofsX, mHeight - ofsY, mFramePaint);
 
         mFramePaint.setStyle(Paint.Style.FILL_AND_STROKE);
         float cx = mHeight * 0.1f;
@@ -181,7 +447,7 @@ public class StrokeView extends KeyboardLayout {
         r = mHeight * 0.05f;
 
         if (mPunctuationFlag) {
-            mCanvas.drawCircle(cx, cy, r, mFramePaint);
+            canvas.drawCircle(cx, cy, r, mFramePaint);
         } else {
             int left = (int) (cx - r);
             int top = (int) (cy - r);
@@ -190,18 +456,40 @@ public class StrokeView extends KeyboardLayout {
             if (mShiftSingleFlag) {
                 mShiftSingleDrawable.setBounds(left, top, right, bottom);
                 mShiftSingleDrawable.setTint(mKeyForegroundColor);
-                mShiftSingleDrawable.draw(mCanvas);
+                mShiftSingleDrawable.draw(canvas);
             }
             if (mShiftLockFlag) {
                 mShiftLockDrawable.setBounds(left, top, right, bottom);
                 mShiftLockDrawable.setTint(mKeyForegroundColor);
-                mShiftLockDrawable.draw(mCanvas);
+                mShiftLockDrawable.draw(canvas);
             }
         }
-        mCanvas.drawPath(mStrokePath, mStrokePaint);
+    }
 
-        mImageView.setImageBitmap(mBitmap);
-        invalidate();
+    /**
+     * 評価用のコーパスにストロークを追加する(正解は認識結果なので、間違っていたら後で直す)
+     * <p>
+     * ファイルへの書き込みはUIスレッドの外で行う。点は次のストロークで上書きされるので写してから渡す。
+     */
+    private void captureStroke(char mode, char label) {
+        File file = new File(mContext.getFilesDir(), StrokeCorpus.FILE_NAME);
+        StrokeBuffer buffer = mStrokeBuffer.copy();
+        sCaptureExecutor.execute(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+                writer.write(StrokeCorpus.format(mode, label, buffer));
+                writer.write('\n');
+            } catch (IOException e) {
+                Log.w(TAG, "failed to capture stroke", e);
+            }
+        });
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, @Nullable String key) {
+        super.onSharedPreferenceChanged(sharedPreferences, key);
+        if ("stroke_corpus_capture".equals(key)) {
+            mCorpusCapture = sharedPreferences.getBoolean(key, false);
+        }
     }
 
     // CAPS以外、アルファベット数字共通
@@ -243,8 +531,12 @@ public class StrokeView extends KeyboardLayout {
         mDensity = dm.density;
         mWidth = w;
         mHeight = h;
-        mBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
-        drawKeyboard();
+        mBackgroundNode.setPosition(0, 0, w, h);
+        for (RenderNode node : mTrailNodes) {
+            node.setPosition(0, 0, w, h);
+        }
+        mBackgroundDirty = true;
+        mTrailDirty = mTrailNodeCount > 0;
+        invalidate();
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.kachaya.ime;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * 読みから記号(絵文字・記号)を引く索引
+ * <p>
+ * 同梱のsymbol_index.txtは「読み&lt;TAB&gt;記号 記号 …」を読みの順に並べたもの。記号は記号一覧(SymbolView)にあるものだけ。
+ * 起動時には読み込まず、最初に引いたときに読みと記号の配列にして、読みを二分探索で前方一致に引く。
+ */
+public class SymbolIndex {
+    private static final String TAG = "SymbolIndex";
+    public static final String ASSET_FILE_NAME = "symbol_index.txt";
+
+    private final Context mContext;
+    /** 読み(昇順) */
+    private String[] mKeys;
+    /** 読みに対応する記号(空白区切り) */
+    private String[] mValues;
+
+    public SymbolIndex(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    private synchronized void load() {
+        if (mKeys != null) {
+            return;
+        }
+        long startTime = SystemClock.uptimeMillis();
+        ArrayList<String> keys = new ArrayList<>();
+        ArrayList<String> values = new ArrayList<>();
+        try {
+            BufferedReader br = new BufferedReader(new InputStreamReader(mContext.getAssets().open(ASSET_FILE_NAME)));
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                keys.add(line.substring(0, tab));
+                values.add(line.substring(tab + 1));
+            }
+            br.close();
+        } catch (IOException ignored) {
+        }
+        mValues = values.toArray(new String[0]);
+        mKeys = keys.toArray(new String[0]);
+        Log.d(TAG, mKeys.length + " keys loaded in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+    }
+
+    /**
+     * 読みが完全に一致する記号を候補に追加する
+     *
+     * @param key        読み
+     * @param source     出どころ
+     * @param score      先頭の記号の優先度(以降は1ずつ下げる)
+     * @param candidates 追加先
+     * @return 追加した記号の数
+     */
+    public int find(String key, int source, int score, CandidateList candidates) {
+        load();
+        int i = Arrays.binarySearch(mKeys, key);
+        if (i < 0) {
+            return 0;
+        }
+        return addSymbols(mKeys[i], mValues[i], source, score, Integer.MAX_VALUE, candidates);
+    }
+
+    /**
+     * 読みが前方一致する(完全一致は除く)記号を候補に追加する
+     *
+     * @param key        読みの先頭
+     * @param maxExtra   補完する文字数の上限
+     * @param limit      追加する記号の数の上限
+     * @param source     出どころ
+     * @param score      先頭の記号の優先度(以降は1ずつ下げる)
+     * @param candidates 追加先
+     * @return 追加した記号の数
+     */
+    public int browse(String key, int maxExtra, int limit, int source, int score, CandidateList candidates) {
+        load();
+        int i = Arrays.binarySearch(mKeys, key);
+        i = (i < 0) ? -i - 1 : i + 1;
+        int count = 0;
+        for (; i < mKeys.length && count < limit; i++) {
+            String indexKey = mKeys[i];
+            if (!indexKey.startsWith(key)) {
+                break;
+            }
+            if (indexKey.length() > key.length() + maxExtra) {
+                continue;   // 順序は辞書順なので、短い読みがこの後にも続く
+            }
+            count += addSymbols(key, mValues[i], source, score - count, limit - count, candidates);
+        }
+        return count;
+    }
+
+    private static int addSymbols(String key, String value, int source, int score, int limit,
+                                  CandidateList candidates) {
+        int count = 0;
+        int start = 0;
+        while (start < value.length() && count < limit) {
+            int end = value.indexOf(' ', start);
+            if (end < 0) {
+                end = value.length();
+            }
+            if (start < end && candidates.add(key, value.substring(start, end), source, score - count)) {
+                count++;
+            }
+            start = end + 1;
+        }
+        return count;
+    }
+}
@@ -16,39 +16,51 @@
 
 package io.github.kachaya.ime;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.TextPaint;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
-import android.view.MotionEvent;
+import android.util.LruCache;
+import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
-import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.google.android.flexbox.AlignItems;
-import com.google.android.flexbox.FlexDirection;
-import com.google.android.flexbox.FlexWrap;
-import com.google.android.flexbox.FlexboxLayoutManager;
-
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class SymbolView extends KeyboardLayout {
 
     private final static int SYMBOL_TYPE_EMOJI = 0;
     private final static int SYMBOL_TYPE_KIGOU = 1;
-    private final FlexboxListViewAdapter mFlexListViewAdapter;
-    private final ArrayList<String> mEmojiList;
-    private final ArrayList<String> mKigouList;
+    /** 文字の大きさ(dp) */
+    private final static float GLYPH_TEXT_SIZE = 24.0f;
+    /** 描画済み文字のキャッシュの大きさ(バイト) */
+    private final static int GLYPH_CACHE_SIZE = 4 * 1024 * 1024;
+    /** 読み込み時にあらかじめ描画しておく文字数(最初の画面分) */
+    private final static int GLYPH_PREFETCH_COUNT = 64;
+    /** 読み込み済みの記号一覧(全インスタンスで共有する) */
+    private static volatile Symbols sSymbols;
+    private final RecyclerView mRecyclerView;
+    private final GridLayoutManager mGridLayoutManager;
+    // 一覧ごとのアダプター(読み込むまではnull)
+    private SymbolAdapter mEmojiAdapter;
+    private SymbolAdapter mKigouAdapter;
+    /** 描画済み文字のキャッシュ */
+    private final LruCache<String, Bitmap> mGlyphCache;
+    private final TextPaint mGlyphPaint;
+    private final int mCellSize;
     private float mSymbolAreaHeight;
     private int mSymbolType;
 
@@ -56,32 +68,44 @@ public class SymbolView extends KeyboardLayout {
         super(context, attrs);
         setOrientation(VERTICAL);
 
-        // 上部80%にRecyclerViewを配置
-        RecyclerView recyclerView = new RecyclerView(context);
-        addView(recyclerView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 4.0f));
-
-        FlexboxLayoutManager flexboxLayoutManager = new FlexboxLayoutManager(context);
-        flexboxLayoutManager.setFlexWrap(FlexWrap.WRAP);
-        flexboxLayoutManager.setFlexDirection(FlexDirection.ROW);
-        flexboxLayoutManager.setAlignItems(AlignItems.STRETCH);
-
-        recyclerView.setLayoutManager(flexboxLayoutManager);
+        mCellSize = getResources().getDimensionPixelSize(R.dimen.softkey_height);
+        mGlyphPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        mGlyphPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, GLYPH_TEXT_SIZE,
+                getResources().getDisplayMetrics()));
+        mGlyphPaint.setColor(ContextCompat.getColor(context, R.color.key_foreground));
+        mGlyphCache = new LruCache<String, Bitmap>(GLYPH_CACHE_SIZE) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
 
-        // RecyclerViewの中身
-        mFlexListViewAdapter = new FlexboxListViewAdapter(context);
-        recyclerView.setAdapter(mFlexListViewAdapter);
+        // 上部80%にRecyclerViewを配置
+        mRecyclerView = new RecyclerView(context);
+        addView(mRecyclerView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 4.0f));
 
-        mEmojiList = buildSymbolList("emoji.txt");
-        mKigouList = buildSymbolList("kigou.txt");
+        // 固定サイズの格子に並べる(列数はonSizeChangedで決める)
+        mGridLayoutManager = new GridLayoutManager(context, 8);
+        mGridLayoutManager.setItemPrefetchEnabled(true);
+        mRecyclerView.setLayoutManager(mGridLayoutManager);
+        mRecyclerView.setHasFixedSize(true);
+        mRecyclerView.setItemAnimator(null);
 
+        // 記号一覧はバックグラウンドで読み込み、最初の画面分の文字も描画してから表示する
         mSymbolType = SYMBOL_TYPE_EMOJI;
-        mFlexListViewAdapter.setData(mEmojiList);
-
-        // 下部20%にImageViewを配置
-        mImageView = new ImageView(context);
-        addView(mImageView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1.0f));
-
-        // ImageViewに配置するSoftKey
+        Context appContext = context.getApplicationContext();
+        TextPaint paint = new TextPaint(mGlyphPaint);
+        new Thread(() -> {
+            Symbols loaded = loadSymbols(appContext);
+            prefetchGlyphs(loaded.emoji, paint);
+            prefetchGlyphs(loaded.kigou, paint);
+            post(() -> setSymbols(loaded));
+        }, "SymbolLoader").start();
+
+        // 下部20%は空けておき、SoftKeyをonDrawで描く
+        addView(new View(context), new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 0, 1.0f));
+
+        // 下部に配置するSoftKey
         mSoftKeys.add(mSymbolKey);
         mSoftKeys.add(mKeyboardViewKey);
         mSoftKeys.add(mSpaceKey);
@@ -91,10 +115,20 @@ public class SymbolView extends KeyboardLayout {
         mSoftKeys.add(mEnterKey);
     }
 
-    private ArrayList<String> buildSymbolList(String fileName) {
+    /**
+     * 記号一覧を読み込む(読み込み済みならそれを返す)
+     */
+    private static synchronized Symbols loadSymbols(Context context) {
+        if (sSymbols == null) {
+            sSymbols = new Symbols(buildSymbolList(context, "emoji.txt"), buildSymbolList(context, "kigou.txt"));
+        }
+        return sSymbols;
+    }
+
+    private static List<String> buildSymbolList(Context context, String fileName) {
         ArrayList<String> list = new ArrayList<>();
         try {
-            BufferedReader br = new BufferedReader(new InputStreamReader(mContext.getAssets().open(fileName)));
+            BufferedReader br = new BufferedReader(new InputStreamReader(context.getAssets().open(fileName)));
             String line;
             while ((line = br.readLine()) != null) {
                 if (line.startsWith("#")) {
@@ -105,64 +139,54 @@ public class SymbolView extends KeyboardLayout {
             br.close();
         } catch (IOException ignored) {
         }
-        return list;
+        return Collections.unmodifiableList(list);
     }
 
-    @SuppressLint("ClickableViewAccessibility")
-    @Override
-    public boolean onTouchEvent(@NonNull MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
-        SoftKey currentKey = null;  // キーがない場所の場合(外へ出て行った等)
-        for (SoftKey softkey : mSoftKeys) {
-            if (softkey.contains(x, y - mSymbolAreaHeight)) {
-                currentKey = softkey;
-                break;
+    /**
+     * 先頭の文字をキャッシュに描画しておく(LruCacheはスレッドセーフ)
+     */
+    private void prefetchGlyphs(List<String> list, TextPaint paint) {
+        int count = Math.min(list.size(), GLYPH_PREFETCH_COUNT);
+        for (int i = 0; i < count; i++) {
+            String text = list.get(i);
+            if (mGlyphCache.get(text) == null) {
+                mGlyphCache.put(text, renderGlyph(text, paint));
             }
         }
-        if (currentKey == null) {
-            return true;
+    }
+
+    private Bitmap getGlyph(String text) {
+        Bitmap glyph = mGlyphCache.get(text);
+        if (glyph == null) {
+            glyph = renderGlyph(text, mGlyphPaint);
+            mGlyphCache.put(text, glyph);
         }
+        return glyph;
+    }
 
-        switch (event.getAction()) {
-            case MotionEvent.ACTION_DOWN:
-                if (currentKey.isRepeatable()) {
-                    // 押されたキーの初回リピート
-                    mRepeatKey = currentKey;
-                    mRepeatHandler.postDelayed(mRepeatRunnable, mRepeatTimeout);
-                }
-                currentKey.setPressed(true);
-                mLastKey = currentKey;
-                break;
+    private static Bitmap renderGlyph(String text, TextPaint paint) {
+        Paint.FontMetricsInt fm = paint.getFontMetricsInt();
+        int width = Math.max(1, (int) Math.ceil(paint.measureText(text)));
+        int height = Math.max(1, fm.descent - fm.ascent);
+        Bitmap glyph = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(glyph).drawText(text, 0, -fm.ascent, paint);
+        return glyph;
+    }
 
-            case MotionEvent.ACTION_MOVE:
-                if (currentKey.equals(mLastKey)) {
-                    return true;    // 同じキー内
-                }
-                if (currentKey.isRepeatable()) {
-                    // 移動した先のキーの初回リピート
-                    mRepeatKey = currentKey;
-                    mRepeatHandler.postDelayed(mRepeatRunnable, mRepeatTimeout);
-                }
-                if (mLastKey != null) {
-                    mLastKey.setPressed(false);
-                }
-                currentKey.setPressed(true);
-                mLastKey = currentKey;
-                break;
-
-            case MotionEvent.ACTION_UP:
-                currentKey.setPressed(false);
-                processSoftKey(currentKey);
-                mRepeatKey = null;
-                mLastKey = null;
-                break;
-
-            default:
-                break;
+    private void setSymbols(Symbols symbols) {
+        mEmojiAdapter = new SymbolAdapter(symbols.emoji, SYMBOL_TYPE_EMOJI);
+        mKigouAdapter = new SymbolAdapter(symbols.kigou, SYMBOL_TYPE_KIGOU);
+        updateSymbolList();
+    }
+
+    /**
+     * 表示する一覧のアダプターに切り替える(セルは作り直さずに使い回す)
+     */
+    private void updateSymbolList() {
+        SymbolAdapter adapter = (mSymbolType == SYMBOL_TYPE_EMOJI) ? mEmojiAdapter : mKigouAdapter;
+        if (adapter != null && mRecyclerView.getAdapter() != adapter) {
+            mRecyclerView.swapAdapter(adapter, false);
         }
-        drawKeyboard();
-        return true;
     }
 
     @Override
@@ -172,29 +196,17 @@ public class SymbolView extends KeyboardLayout {
             if (mSymbolType == SYMBOL_TYPE_EMOJI) {
                 mSymbolType = SYMBOL_TYPE_KIGOU;
                 mSymbolKey.setDrawable(mSymbolEmojiDrawable);
-                mFlexListViewAdapter.setData(mKigouList);
             } else {
                 mSymbolType = SYMBOL_TYPE_EMOJI;
                 mSymbolKey.setDrawable(mSymbolKigouDrawable);
-                mFlexListViewAdapter.setData(mEmojiList);
             }
+            updateSymbolList();
+            invalidateKeys();
             return;
         }
         super.processSoftKey(softKey);
     }
 
-    private void drawKeyboard() {
-        if (mCanvas == null) {
-            return;
-        }
-        mCanvas.drawColor(mBackgroundColor);
-        for (SoftKey softKey : mSoftKeys) {
-            softKey.draw(mCanvas);
-        }
-        mImageView.setImageBitmap(mBitmap);
-        invalidate();
-    }
-
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -203,75 +215,119 @@ public class SymbolView extends KeyboardLayout {
         float mKeypadAreaHeight = h / 5.0f;
         mSymbolAreaHeight = h - mKeypadAreaHeight;
         float kw = mWidth / 8.0f;
+        float ky = mSymbolAreaHeight;
+
+        mSymbolKey.setPos(kw * 0, ky, kw, mKeypadAreaHeight);
+        mKeyboardViewKey.setPos(kw * 1, ky, kw, mKeypadAreaHeight);
+        mSpaceKey.setPos(kw * 2, ky, kw * 2, mKeypadAreaHeight);
+        mCursorLeftKey.setPos(kw * 4, ky, kw, mKeypadAreaHeight);
+        mCursorRightKey.setPos(kw * 5, ky, kw, mKeypadAreaHeight);
+        mBackspaceKey.setPos(kw * 6, ky, kw, mKeypadAreaHeight);
+        mEnterKey.setPos(kw * 7, ky, kw, mKeypadAreaHeight);
+        buildKeyGrid(8, 5, w, h);
+
+        // 幅に収まるだけ列を並べ、スクロールで1行ずつ入れ替わっても作り直さないだけ使い回す
+        int spanCount = Math.max(1, w / mCellSize);
+        mGridLayoutManager.setSpanCount(spanCount);
+        mRecyclerView.getRecycledViewPool().setMaxRecycledViews(0, spanCount * 2);
+
+        invalidateKeys();
+    }
 
-        mSymbolKey.setPos(kw * 0, 0, kw, mKeypadAreaHeight);
-        mKeyboardViewKey.setPos(kw * 1, 0, kw, mKeypadAreaHeight);
-        mSpaceKey.setPos(kw * 2, 0, kw * 2, mKeypadAreaHeight);
-        mCursorLeftKey.setPos(kw * 4, 0, kw, mKeypadAreaHeight);
-        mCursorRightKey.setPos(kw * 5, 0, kw, mKeypadAreaHeight);
-        mBackspaceKey.setPos(kw * 6, 0, kw, mKeypadAreaHeight);
-        mEnterKey.setPos(kw * 7, 0, kw, mKeypadAreaHeight);
-
-        mBitmap = Bitmap.createBitmap(w, (int) mKeypadAreaHeight, Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
-        drawKeyboard();
+    /**
+     * 記号一覧(生成後は変更しない)
+     */
+    private static final class Symbols {
+        final List<String> emoji;
+        final List<String> kigou;
+
+        Symbols(List<String> emoji, List<String> kigou) {
+            this.emoji = emoji;
+            this.kigou = kigou;
+        }
     }
 
-    private static class FlexboxListViewHolder extends RecyclerView.ViewHolder {
-        private final TextView mTextView;
+    /**
+     * キャッシュした文字のビットマップを中央に描くだけのセル
+     */
+    private static class GlyphView extends View {
+        private String mText;
+        private Bitmap mGlyph;
 
-        FlexboxListViewHolder(View itemView) {
-            super(itemView);
-            mTextView = itemView.findViewById(R.id.text_view);
+        GlyphView(Context context) {
+            super(context);
+        }
+
+        void setGlyph(String text, Bitmap glyph) {
+            mText = text;
+            mGlyph = glyph;
+            setContentDescription(text);
+            invalidate();
         }
 
-        void bindTo(String text) {
-            mTextView.setText(text);
-            ViewGroup.LayoutParams lp = mTextView.getLayoutParams();
-            if (lp instanceof FlexboxLayoutManager.LayoutParams) {
-                FlexboxLayoutManager.LayoutParams flexboxLp = (FlexboxLayoutManager.LayoutParams) lp;
-                flexboxLp.setFlexGrow(1.0f);
+        String getText() {
+            return mText;
+        }
+
+        @Override
+        protected void onDraw(@NonNull Canvas canvas) {
+            if (mGlyph != null) {
+                canvas.drawBitmap(mGlyph, (getWidth() - mGlyph.getWidth()) / 2.0f,
+                        (getHeight() - mGlyph.getHeight()) / 2.0f, null);
             }
         }
     }
 
-    private class FlexboxListViewAdapter extends RecyclerView.Adapter<FlexboxListViewHolder> {
-        private final Context mContext;
-        private ArrayList<String> data;
+    private static class SymbolViewHolder extends RecyclerView.ViewHolder {
+        private final GlyphView mGlyphView;
 
-        FlexboxListViewAdapter(Context context) {
-            mContext = context;
+        SymbolViewHolder(GlyphView itemView) {
+            super(itemView);
+            mGlyphView = itemView;
         }
+    }
 
-        public void setData(ArrayList<String> data) {
+    /**
+     * 1つの一覧を表示するアダプター(一覧は変更しないので、切り替えはアダプターごと行う)
+     */
+    private class SymbolAdapter extends RecyclerView.Adapter<SymbolViewHolder> {
+        private final List<String> data;
+        private final int type;
+
+        SymbolAdapter(List<String> data, int type) {
             this.data = data;
-            notifyDataSetChanged();
+            this.type = type;
+            setHasStableIds(true);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            // 種類と位置で一意にする(一覧は変更しないので同じ位置は同じ記号)
+            return ((long) type << 32) | position;
         }
 
         @NonNull
         @Override
-        public FlexboxListViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext())
-                    .inflate(R.layout.viewholder_text, parent, false);
+        public SymbolViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            GlyphView view = new GlyphView(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, mCellSize));
+            view.setBackgroundResource(R.drawable.symbol_text_background);
             view.setOnClickListener(this::onClickListener);
-            return new FlexboxListViewHolder(view);
+            return new SymbolViewHolder(view);
         }
 
         private void onClickListener(View view) {
-            TextView tv = (TextView) view;
-            mSoftKeyboard.handleString(tv.getText().toString());
+            mSoftKeyboard.handleString(((GlyphView) view).getText());
         }
 
         @Override
-        public void onBindViewHolder(@NonNull FlexboxListViewHolder holder, int position) {
-            holder.bindTo(data.get(position));
+        public void onBindViewHolder(@NonNull SymbolViewHolder holder, int position) {
+            String text = data.get(position);
+            holder.mGlyphView.setGlyph(text, getGlyph(text));
         }
 
         @Override
         public int getItemCount() {
-            if (data == null) {
-                return 0;
-            }
             return data.size();
         }
     }
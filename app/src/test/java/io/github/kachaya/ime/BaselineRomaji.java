@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.kachaya.ime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 以前のreplaceAllの連鎖によるローマ字変換(比較の基準)
+ * <p>
+ * 変換表はテスト用のリソースromaji_baseline.txtに固定してある。
+ */
+class BaselineRomaji {
+    static final String RESOURCE_NAME = "/romaji_baseline.txt";
+
+    private final String[][] mRules;
+
+    BaselineRomaji() throws IOException {
+        mRules = RomajiTable.parse(readLines(RESOURCE_NAME));
+    }
+
+    String[][] getRules() {
+        return mRules;
+    }
+
+    String convert(CharSequence cs) {
+        String s = cs.toString().toLowerCase();
+        for (String[] pair : mRules) {
+            s = s.replaceAll(Pattern.quote(pair[0]), Matcher.quoteReplacement(pair[1]));
+        }
+        return s;
+    }
+
+    static ArrayList<String> readLines(String name) throws IOException {
+        ArrayList<String> lines = new ArrayList<>();
+        try (InputStream is = BaselineRomaji.class.getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IOException(name + " not found");
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * 文字種変換の以前のString版とchar[]の処理の時間と確保量を測る
+ * <p>
+ * 結果は標準出力に出す。時間は環境で変わるので比べるだけにし、
+ * 呼び出し側のバッファを使うchar[]の処理が確保しないことだけを確かめる。
+ */
+public class ConverterBenchmarkTest {
+    // 候補を作る時に変換する程度の長さの読み
+    private static final String HIRAGANA = "きょうはいいてんきですね";
+    private static final String LATIN = "Hello, World";
+    private static final int WARMUP = 200000;
+    private static final int COUNT = 1000000;
+
+    private interface Op {
+        int run();
+    }
+
+    /**
+     * @return 1回あたりの時間(ns)
+     */
+    private static double time(Op op) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += op.run();
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            sink += op.run();
+        }
+        double ns = (double) (System.nanoTime() - startTime) / COUNT;
+        assertTrue(sink > 0);
+        return ns;
+    }
+
+    @Test
+    public void latency() {
+        char[] src = HIRAGANA.toCharArray();
+        char[] latin = LATIN.toCharArray();
+        char[] dst = new char[src.length * 2];
+        report("toWideKatakana", time(() -> BaselineConverter.toWideKatakana(HIRAGANA).length()),
+                time(() -> Converter.toWideKatakana(src, src.length, dst)));
+        report("toHalfKatakana", time(() -> BaselineConverter.toHalfKatakana(HIRAGANA).length()),
+                time(() -> Converter.toHalfKatakana(src, src.length, dst)));
+        report("toWideLatin", time(() -> BaselineConverter.toWideLatin(LATIN).length()),
+                time(() -> Converter.toWideLatin(latin, latin.length, dst)));
+    }
+
+    private static void report(String name, double baseline, double kernel) {
+        System.out.printf(Locale.ROOT, "%s: %.1f ns before, %.1f ns with char[]%n", name, baseline, kernel);
+    }
+
+    @Test
+    public void kernelsDoNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+
+        char[] src = HIRAGANA.toCharArray();
+        char[] buf = new char[src.length];
+        char[] dst = new char[src.length * 2];
+        for (int i = 0; i < WARMUP; i++) {
+            System.arraycopy(src, 0, buf, 0, src.length);
+            Converter.toSearchKey(buf, buf.length);
+            Converter.toWideKatakana(buf, buf.length, buf);
+            Converter.toHalfKatakana(src, src.length, dst);
+            Converter.toWideLatin(src, src.length, dst);
+        }
+        long startBytes = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < COUNT; i++) {
+            System.arraycopy(src, 0, buf, 0, src.length);
+            Converter.toSearchKey(buf, buf.length);
+            Converter.toWideKatakana(buf, buf.length, buf);
+            Converter.toHalfKatakana(src, src.length, dst);
+            Converter.toWideLatin(src, src.length, dst);
+        }
+        long bytes = bean.getThreadAllocatedBytes(threadId) - startBytes;
+        System.out.printf(Locale.ROOT, "converter kernels: %.3f bytes/op%n", (double) bytes / COUNT);
+        // 測定のためのわずかな確保は許す(1回でも配列を作れば数十MBになる)
+        assertTrue(bytes + " bytes", bytes < 64 * 1024);
+    }
+}
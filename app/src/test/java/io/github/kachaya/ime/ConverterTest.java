@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 文字種変換のchar[]の処理が以前のString版と同じ結果になることを確かめる
+ */
+public class ConverterTest {
+    // 比べる範囲(ASCIIからカタカナ拡張まで)
+    private static final char FIRST = ' ';
+    private static final char LAST = 'ㇿ';
+
+    private static String allChars() {
+        StringBuilder sb = new StringBuilder();
+        for (char ch = FIRST; ch <= LAST; ch++) {
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void eachCharMatchesBaseline() {
+        for (char ch = FIRST; ch <= LAST; ch++) {
+            String s = String.valueOf(ch);
+            String hex = Integer.toHexString(ch);
+            assertEquals(hex, BaselineConverter.toWideLatin(s), Converter.toWideLatin(s));
+            assertEquals(hex, BaselineConverter.toWideKatakana(s), Converter.toWideKatakana(s));
+            assertEquals(hex, BaselineConverter.toHalfKatakana(s), Converter.toHalfKatakana(s));
+        }
+    }
+
+    @Test
+    public void kernelsMatchBaseline() {
+        String s = allChars();
+        int length = s.length();
+        char[] src = s.toCharArray();
+        char[] dst = new char[length * 2];
+
+        assertEquals(BaselineConverter.toWideLatin(s), new String(dst, 0, Converter.toWideLatin(src, length, dst)));
+        assertEquals(BaselineConverter.toWideKatakana(s), new String(dst, 0, Converter.toWideKatakana(src, length, dst)));
+        assertEquals(BaselineConverter.toHalfKatakana(s), new String(dst, 0, Converter.toHalfKatakana(src, length, dst)));
+
+        // 同じ長さの変換はその場で書き換えられる
+        char[] buf = s.toCharArray();
+        assertEquals(BaselineConverter.toWideLatin(s), new String(buf, 0, Converter.toWideLatin(buf, length, buf)));
+        buf = s.toCharArray();
+        assertEquals(BaselineConverter.toWideKatakana(s), new String(buf, 0, Converter.toWideKatakana(buf, length, buf)));
+    }
+
+    @Test
+    public void toHiraganaInvertsToWideKatakana() {
+        for (char ch = FIRST; ch <= LAST; ch++) {
+            char hiragana = Converter.toHiragana(ch);
+            if (ch >= 'ァ' && ch <= 'ヶ') {
+                assertEquals(ch, Converter.toWideKatakana(hiragana));
+                assertTrue(hiragana >= 'ぁ' && hiragana <= 'ゖ');
+            } else {
+                assertEquals(ch, hiragana);
+            }
+        }
+        assertEquals("ひらがなとかたかなヷー", Converter.toHiragana("ひらがなとカタカナヷー"));
+    }
+
+    private static String searchKey(String s, boolean hiraganaOnly) {
+        char[] buf = s.toCharArray();
+        assertEquals(hiraganaOnly, Converter.toSearchKey(buf, buf.length));
+        return new String(buf);
+    }
+
+    @Test
+    public void searchKeyNormalizesKatakana() {
+        assertEquals("かたかな", searchKey("カタカナ", true));
+        assertEquals("ぱそこん", searchKey("パソコン", true));
+        assertEquals("かたかなと", searchKey("カタカナと", true));
+        assertEquals("ゔぃ", searchKey("ヴィ", true));
+        // ひらがなの無い文字と長音はそのまま
+        assertEquals("ヷー", searchKey("ヷー", true));
+        // ASCII文字が残っていれば辞書は引かない
+        assertEquals("かk", searchKey("カk", false));
+        assertEquals("", searchKey("", true));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * AZIKの変換表がAZIKの代表的な入力を変換できることを確かめる
+ */
+public class RomajiAzikTest {
+    /** 単体テストはモジュールのディレクトリで実行される */
+    private static final File AZIK_FILE = new File("src/main/assets/romaji_azik.txt");
+
+    private static final String[][] EXAMPLES = {
+            // 撥音拡張
+            {"kz", "かん"}, {"kk", "きん"}, {"kj", "くん"}, {"kd", "けん"}, {"kl", "こん"},
+            {"hz", "はん"}, {"bk", "びん"}, {"mj", "むん"},
+            // 二重母音拡張
+            {"kq", "かい"}, {"kh", "くう"}, {"kw", "けい"}, {"kp", "こう"},
+            {"sp", "そう"}, {"tq", "たい"}, {"yh", "ゆう"}, {"yp", "よう"},
+            // 拗音の拡張
+            {"kyz", "きゃん"}, {"kyk", "きぃん"}, {"kyj", "きゅん"}, {"kyd", "きぇん"}, {"kyl", "きょん"},
+            {"kyq", "きゃい"}, {"kyh", "きゅう"}, {"kyw", "きぇい"}, {"kyp", "きょう"},
+            {"syq", "しゃい"}, {"ryp", "りょう"}, {"gyj", "ぎゅん"}, {"nyh", "にゅう"}, {"jyp", "じょう"},
+            // j・f・v行
+            {"jz", "じゃん"}, {"jk", "じん"}, {"jj", "じゅん"}, {"jd", "じぇん"}, {"jl", "じょん"},
+            {"jq", "じゃい"}, {"jh", "じゅう"}, {"jw", "じぇい"}, {"jp", "じょう"},
+            {"fj", "ふん"}, {"fh", "ふう"}, {"vz", "ゔぁん"},
+            // c(ち行)・x(し行)
+            {"ca", "ちゃ"}, {"ci", "ち"}, {"cu", "ちゅ"}, {"ce", "ちぇ"}, {"co", "ちょ"},
+            {"cz", "ちゃん"}, {"ck", "ちん"}, {"cp", "ちょう"}, {"ch", "ちゅう"},
+            {"xa", "しゃ"}, {"xi", "し"}, {"xu", "しゅ"}, {"xe", "しぇ"}, {"xo", "しょ"},
+            {"xk", "しん"}, {"xp", "しょう"}, {"xh", "しゅう"},
+            // 標準のローマ字も使える
+            {"cha", "ちゃ"}, {"sha", "しゃ"}, {"kyou", "きょう"}, {"kannji", "かんじ"}, {"nn", "ん"},
+            {"tte", "って"}, {"la", "ぁ"}, {"ltu", "っ"}, {"lya", "ゃ"},
+            // その他
+            {";", "っ"}, {"ka;ta", "かった"}, {"q", "ん"}, {"ds", "です"}, {"ms", "ます"},
+            // 単語
+            {"kkkz", "きんかん"}, {"nihlgo", "にほんご"}, {"gkkp", "ぎんこう"}, {"hyp", "ひょう"},
+            {"syuzk", "しゅじん"}, {"xkbj", "しんぶん"},
+    };
+
+    private static RomajiTable sTable;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        sTable = RomajiTable.compile(RomajiTable.parse(Files.readAllLines(AZIK_FILE.toPath(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void examples() {
+        for (String[] example : EXAMPLES) {
+            assertEquals(example[0], example[1], sTable.convert(example[0]));
+        }
+    }
+}
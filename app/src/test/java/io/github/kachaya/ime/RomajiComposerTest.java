@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * RomajiComposerの差分変換が、入力全体を以前のreplaceAllの連鎖で変換した結果と同じになることを確かめる
+ */
+public class RomajiComposerTest {
+    private static final String ALPHABET = "knyashtuxq'-N,.aiueoＡ";
+    private static final long SEED = 20231102L;
+
+    private BaselineRomaji mBaseline;
+    private RomajiComposer mComposer;
+
+    @Before
+    public void setUp() throws Exception {
+        mBaseline = new BaselineRomaji();
+        mComposer = new RomajiComposer(RomajiTable.compile(mBaseline.getRules()));
+    }
+
+    private void assertConverted() {
+        String input = mComposer.toString();
+        assertEquals(input, mBaseline.convert(input), mComposer.getHiragana());
+    }
+
+    @Test
+    public void typedCases() {
+        String[] inputs = {"nnn'", "kannji", "xtsuxtu", "nyanko", "kkka", "shinnnyuu", "xxya", "Ａnna", "NNKA"};
+        for (String input : inputs) {
+            mComposer.setLength(0);
+            for (int i = 0; i < input.length(); i++) {
+                mComposer.append(input.charAt(i));
+                assertConverted();
+            }
+            while (mComposer.length() > 0) {
+                mComposer.deleteCharAt(mComposer.length() - 1);
+                assertConverted();
+            }
+        }
+    }
+
+    @Test
+    public void randomEdits() {
+        Random random = new Random(SEED);
+        for (int n = 0; n < 20000; n++) {
+            int length = mComposer.length();
+            int op = random.nextInt(10);
+            if (op < 6 || length == 0) {
+                mComposer.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            } else if (op < 8) {
+                mComposer.deleteCharAt(length - 1);
+            } else if (op == 8) {
+                mComposer.deleteCharAt(random.nextInt(length));
+            } else {
+                // 確定したように先頭を消す
+                mComposer.delete(0, random.nextInt(length + 1));
+            }
+            if (mComposer.length() > 16) {
+                mComposer.setLength(0);
+            }
+            assertConverted();
+            // 変換対象長までの変換(カーソルキーで縮めた時)
+            int prefix = random.nextInt(mComposer.length() + 1);
+            String head = mComposer.substring(0, prefix);
+            assertEquals(head, mBaseline.convert(head), mComposer.getHiragana(prefix));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * コンパイル済みのローマ字変換表が、以前のreplaceAllの連鎖と同じ結果になることを確かめる
+ */
+public class RomajiTableTest {
+    /** n・っ・小書き文字の規則にかかわる文字を多めにしたアルファベット */
+    private static final String TRICKY_ALPHABET = "knyashtuxq'-N";
+    /** 変換表に現れる文字と、変換表に無い文字・特殊な小文字化をする文字 */
+    private static final String FULL_ALPHABET = "abcdefghijklmnopqrstuvwxyz'-,.!?/[]ABKNXYZ1 Ａあ";
+    private static final long SEED = 20231101L;
+
+    private BaselineRomaji mBaseline;
+    private RomajiTable mTable;
+
+    @Before
+    public void setUp() throws Exception {
+        mBaseline = new BaselineRomaji();
+        mTable = RomajiTable.compile(mBaseline.getRules());
+    }
+
+    @Test
+    public void standardRulesMatchBaseline() {
+        assertArrayEquals(mBaseline.getRules(), Converter.getRomajiRules());
+    }
+
+    @Test
+    public void trickyCases() {
+        String[] inputs = {
+                "n", "nn", "nnn", "nnnn", "n'", "nn'", "n'n", "nna", "nnya", "nya", "nka", "nkk",
+                "xtu", "xtsu", "ltu", "ltsu", "xxtu", "xtuu", "xtsuu", "tsu", "ttsu", "kkk", "kka",
+                "xya", "xxya", "lyo", "wyi", "xka", "shi", "sshi", "chi", "tchi", "n-", "KANJI", "NNA",
+                "Ａ", "kＡ", "kkＡ", "",
+        };
+        for (String input : inputs) {
+            assertEquals(input, mBaseline.convert(input), mTable.convert(input));
+            assertEquals(input, mBaseline.convert(input), Converter.romajiToHiragana(input));
+        }
+    }
+
+    @Test
+    public void allShortStrings() {
+        char[] buf = new char[4];
+        for (int length = 1; length <= buf.length; length++) {
+            int total = (int) Math.pow(TRICKY_ALPHABET.length(), length);
+            for (int n = 0; n < total; n++) {
+                int m = n;
+                for (int i = 0; i < length; i++) {
+                    buf[i] = TRICKY_ALPHABET.charAt(m % TRICKY_ALPHABET.length());
+                    m /= TRICKY_ALPHABET.length();
+                }
+                String input = new String(buf, 0, length);
+                assertEquals(input, mBaseline.convert(input), mTable.convert(input));
+            }
+        }
+    }
+
+    @Test
+    public void randomStrings() {
+        Random random = new Random(SEED);
+        for (int n = 0; n < 20000; n++) {
+            String input = randomString(random, FULL_ALPHABET, 1 + random.nextInt(12));
+            assertEquals(input, mBaseline.convert(input), mTable.convert(input));
+        }
+    }
+
+    static String randomString(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+}
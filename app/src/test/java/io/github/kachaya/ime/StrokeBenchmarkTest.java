@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 手書き入力の認識時間と1ストロークあたりの確保量を評価用コーパスで測る
+ * <p>
+ * 結果は標準出力に出す。時間は環境で変わるので大きく外れた時だけ失敗にし、
+ * 作業領域を使い回す認識で配列を確保していないことは確保量で確かめる。
+ */
+public class StrokeBenchmarkTest {
+    // JITが落ち着くまで空回しする回数と、測る回数(コーパス全体を1回とする)
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 10;
+    // 認識1回のp99の上限(µs)。普通の開発機では100µs以下なので、遅いCIでも落ちない値にする
+    private static final double MAX_P99_US = 2000;
+    // 作業領域を使い回す時の1回あたりの確保量の上限(バイト)。毎回の配列の確保(約1.9KB)が戻れば超える
+    private static final double MAX_BYTES_PER_STROKE = 64;
+
+    private static List<StrokeCorpus> sSamples;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        Stroke.setModels(StrokeTestData.readBuiltinModels());
+        sSamples = StrokeTestData.readCorpus();
+        Stroke.Workspace work = new Stroke.Workspace();
+        for (int r = 0; r < WARMUP_ROUNDS; r++) {
+            for (StrokeCorpus sample : sSamples) {
+                Stroke.recognize(sample.buffer, work);
+                Stroke.recognize(sample.buffer);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        Stroke.setModels(null);
+    }
+
+    @Test
+    public void latency() {
+        Stroke.Workspace work = new Stroke.Workspace();
+        long[] times = new long[sSamples.size() * ROUNDS];
+        int t = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            for (StrokeCorpus sample : sSamples) {
+                long startTime = System.nanoTime();
+                Stroke.recognize(sample.buffer, work);
+                times[t++] = System.nanoTime() - startTime;
+            }
+        }
+        Arrays.sort(times);
+        double p50 = times[(times.length - 1) / 2] / 1000.0;
+        double p99 = times[(int) Math.ceil(times.length * 0.99) - 1] / 1000.0;
+        System.out.printf(Locale.ROOT, "stroke latency: %d strokes, %d templates, p50 %.1f us, p99 %.1f us%n",
+                times.length, Stroke.getModels().size(), p50, p99);
+        assertTrue("p99 " + p99 + " us", p99 <= MAX_P99_US);
+    }
+
+    @Test
+    public void allocation() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+        int count = sSamples.size() * ROUNDS;
+
+        Stroke.Workspace work = new Stroke.Workspace();
+        long startBytes = bean.getThreadAllocatedBytes(threadId);
+        for (int r = 0; r < ROUNDS; r++) {
+            for (StrokeCorpus sample : sSamples) {
+                Stroke.recognize(sample.buffer, work);
+            }
+        }
+        double reused = (double) (bean.getThreadAllocatedBytes(threadId) - startBytes) / count;
+
+        startBytes = bean.getThreadAllocatedBytes(threadId);
+        for (int r = 0; r < ROUNDS; r++) {
+            for (StrokeCorpus sample : sSamples) {
+                Stroke.recognize(sample.buffer);
+            }
+        }
+        double fresh = (double) (bean.getThreadAllocatedBytes(threadId) - startBytes) / count;
+
+        System.out.printf(Locale.ROOT, "stroke allocation: %.1f bytes/stroke with a reused workspace, %.1f without%n",
+                reused, fresh);
+        assertTrue(reused + " bytes/stroke", reused <= MAX_BYTES_PER_STROKE);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 評価用コーパスを組み込みの手本で認識させて、正解率が基準を満たすことを確かめる
+ * <p>
+ * 失敗した時は文字ごとの正解率と取り違えの組み合わせをメッセージに出す。
+ */
+public class StrokeRecognizerTest {
+    // 全体の正解率の下限
+    private static final double MIN_ACCURACY = 0.97;
+    // 文字ごとの正解率の下限(円のように手本どうしが似ている文字があるので低めにする)
+    private static final double MIN_CHAR_ACCURACY = 0.6;
+
+    private static List<StrokeCorpus> sSamples;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        Stroke.setModels(StrokeTestData.readBuiltinModels());
+        sSamples = StrokeTestData.readCorpus();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        Stroke.setModels(null);
+    }
+
+    @Test
+    public void corpusIsNotEmpty() {
+        assertTrue(sSamples.size() >= 1000);
+    }
+
+    @Test
+    public void binaryTemplatesMatchSvg() {
+        List<Stroke.Model> binary = Stroke.getModels();
+        List<Stroke.Model> svg = Stroke.createModels();
+        assertEquals(svg.size(), binary.size());
+        for (StrokeCorpus sample : sSamples) {
+            Stroke.setModels(svg);
+            Stroke.Result expected = Stroke.recognize(sample.buffer);
+            Stroke.setModels(binary);
+            Stroke.Result actual = Stroke.recognize(sample.buffer);
+            assertEquals(sample.select(expected), sample.select(actual));
+        }
+    }
+
+    @Test
+    public void accuracy() {
+        Map<Character, int[]> perChar = new TreeMap<>();    // 正解の文字 → {正解数, 件数}
+        Map<String, Integer> confusions = new TreeMap<>();  // "正解 -> 認識結果" → 件数
+        Stroke.Workspace work = new Stroke.Workspace();
+        int correct = 0;
+        for (StrokeCorpus sample : sSamples) {
+            char ch = sample.select(Stroke.recognize(sample.buffer, work));
+            int[] counts = perChar.get(sample.label);
+            if (counts == null) {
+                counts = new int[2];
+                perChar.put(sample.label, counts);
+            }
+            counts[1]++;
+            if (ch == sample.label) {
+                counts[0]++;
+                correct++;
+            } else {
+                String key = "'" + sample.label + "' -> '" + ch + "'";
+                Integer count = confusions.get(key);
+                confusions.put(key, (count == null) ? 1 : count + 1);
+            }
+        }
+
+        double accuracy = (double) correct / sSamples.size();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "accuracy %.4f%n", accuracy));
+        boolean ok = accuracy >= MIN_ACCURACY;
+        for (Map.Entry<Character, int[]> entry : perChar.entrySet()) {
+            int[] counts = entry.getValue();
+            double charAccuracy = (double) counts[0] / counts[1];
+            if (charAccuracy < MIN_CHAR_ACCURACY) {
+                ok = false;
+            }
+            report.append(String.format(Locale.ROOT, "  '%c'  %d/%d  %.4f%n",
+                    entry.getKey(), counts[0], counts[1], charAccuracy));
+        }
+        for (Map.Entry<String, Integer> entry : confusions.entrySet()) {
+            report.append("  ").append(entry.getKey()).append("  ").append(entry.getValue()).append('\n');
+        }
+        assertTrue(report.toString(), ok);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 手書き入力のテストで使う手本と評価用コーパス
+ * <p>
+ * 手本はアプリと同じアセット、コーパスはテスト用のリソースstroke_corpus.txtを使う。
+ */
+class StrokeTestData {
+    /** 単体テストはモジュールのディレクトリで実行される */
+    static final File TEMPLATES_FILE = new File("src/main/assets/" + StrokeTemplates.ASSET_FILE_NAME);
+    static final String CORPUS_NAME = "/stroke_corpus.txt";
+
+    static List<Stroke.Model> readBuiltinModels() throws IOException {
+        return Stroke.readModels(ByteBuffer.wrap(Files.readAllBytes(TEMPLATES_FILE.toPath())));
+    }
+
+    static List<StrokeCorpus> readCorpus() throws IOException {
+        ArrayList<StrokeCorpus> samples = new ArrayList<>();
+        for (String line : BaselineRomaji.readLines(CORPUS_NAME)) {
+            StrokeCorpus sample = StrokeCorpus.parse(line);
+            if (sample != null) {
+                samples.add(sample);
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ユーザーの手本を登録しても組み込みの手本で認識していたものが変わらないことを確かめる
+ */
+public class StrokeUserModelTest {
+    private List<Stroke.Model> mBuiltinModels;
+
+    @Before
+    public void setUp() throws IOException {
+        mBuiltinModels = StrokeTestData.readBuiltinModels();
+        Stroke.setModels(mBuiltinModels);
+    }
+
+    @After
+    public void tearDown() {
+        Stroke.setModels(null);
+    }
+
+    /**
+     * @param degrees 回転する角度(0なら下向き)
+     * @return 少し膨らんだ下向きの線(手で書いた縦線のつもり)を回転したもの
+     */
+    private static StrokeBuffer bowedLine(int degrees) {
+        double radians = Math.toRadians(degrees);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        StrokeBuffer buffer = new StrokeBuffer(16);
+        for (int i = 0; i <= 10; i++) {
+            double x = 4 * Math.sin(Math.PI * i / 10);
+            double y = 4 * i;
+            buffer.add((float) (100 + x * cos - y * sin), (float) (100 + x * sin + y * cos));
+        }
+        return buffer;
+    }
+
+    /**
+     * StrokeTemplateToolと同じように、書いた向き(方向0)だけに文字を指定して登録する
+     */
+    private void addUserModel(char a, char n, char p, StrokeBuffer buffer) {
+        Stroke.Chars[] chars = new Stroke.Chars[]{new Stroke.Chars(a, n, p), null, null, null};
+        ArrayList<Stroke.Model> list = new ArrayList<>(mBuiltinModels);
+        list.add(Stroke.createModel(chars, buffer));
+        Stroke.setModels(list);
+    }
+
+    @Test
+    public void rotatedUserModelDoesNotHideBuiltins() {
+        // 下向きの線を登録しても、それを回転した左・上・右向きの線は組み込みの手本で認識する
+        StrokeBuffer[] lines = {bowedLine(90), bowedLine(180), bowedLine(270)};
+        Stroke.Result[] expected = new Stroke.Result[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            expected[i] = Stroke.recognize(lines[i]);
+            assertNotEquals('N', expected[i].a);
+        }
+        addUserModel('x', 'N', 'N', bowedLine(0));
+        for (int i = 0; i < lines.length; i++) {
+            Stroke.Result actual = Stroke.recognize(lines[i]);
+            assertEquals(expected[i].a, actual.a);
+            assertEquals(expected[i].n, actual.n);
+            assertEquals(expected[i].p, actual.p);
+        }
+    }
+
+    @Test
+    public void corpusStaysRecognized() throws IOException {
+        // 結果が変わるのは登録した手本が選ばれた時だけ
+        List<StrokeCorpus> samples = StrokeTestData.readCorpus();
+        char[] expected = new char[samples.size()];
+        for (int i = 0; i < samples.size(); i++) {
+            expected[i] = samples.get(i).select(Stroke.recognize(samples.get(i).buffer));
+        }
+        StrokeBuffer zigzag = new StrokeBuffer(8);
+        zigzag.add(0, 0);
+        zigzag.add(30, 10);
+        zigzag.add(0, 20);
+        zigzag.add(30, 30);
+        zigzag.add(0, 40);
+        addUserModel('w', '3', 'N', zigzag);
+        assertEquals('w', Stroke.recognize(zigzag).a);
+        for (int i = 0; i < samples.size(); i++) {
+            Stroke.Result result = Stroke.recognize(samples.get(i).buffer);
+            if (samples.get(i).select(result) != expected[i]) {
+                assertEquals('w', result.a);
+                assertEquals('3', result.n);
+            }
+        }
+    }
+}
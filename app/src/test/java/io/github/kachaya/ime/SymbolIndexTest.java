@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023-2024 kachaya
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.kachaya.ime;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 記号の読みの索引が記号一覧にある記号だけを、二分探索できる順に並べていることを確かめる
+ */
+public class SymbolIndexTest {
+    /** 単体テストはモジュールのディレクトリで実行される */
+    private static final File ASSETS_DIR = new File("src/main/assets");
+
+    private static List<String> readLines(String name) throws IOException {
+        return Files.readAllLines(new File(ASSETS_DIR, name).toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void symbolsAreInPalettes() throws IOException {
+        Set<String> palette = new HashSet<>();
+        for (String name : new String[]{"emoji.txt", "kigou.txt"}) {
+            for (String line : readLines(name)) {
+                if (!line.startsWith("#")) {
+                    palette.add(line);
+                }
+            }
+        }
+        String previous = "";
+        for (String line : readLines(SymbolIndex.ASSET_FILE_NAME)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            assertTrue(line, tab > 0);
+            String key = line.substring(0, tab);
+            assertTrue(previous + " < " + key, previous.compareTo(key) < 0);
+            previous = key;
+            for (String symbol : line.substring(tab + 1).split(" ")) {
+                assertTrue(key + ": " + symbol, palette.contains(symbol));
+            }
+        }
+    }
+}